@@ -4,31 +4,91 @@ import src.simulator.FileIO;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Two-pass assembler. Each Assembler instance keeps its own label table and location counter, so separate
+ * instances can assemble concurrently (see BatchAssembler); a single instance assembles one source at a time.
+ * The static assembleFile/assemble methods are kept for the command line and existing callers.
+ */
 public class Assembler {
 
     // this is a mapping of labels and their corresponding locations, generated in 1st pass and used in 2nd pass
-    private static Map<String, Integer> labels = new HashMap<>();
+    private final Map<String, Integer> labels = new HashMap<>();
 
     // current location (where addresses should be saved/operated on etc.)
-    private static int currentLoc = 0;
+    private int currentLoc = 0;
+
+    // tokens of the line being assembled, and its resolved operand values
+    private final Lexer lexer = new Lexer();
+    private final int[] operands = new int[Lexer.MAX_OPERANDS];
 
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.err.println("Usage: java Assembler <assembly file>");
+        if (args.length == 1) {
+            assembleFile(args[0], "data/listing.txt", "data/load.txt");
+        } else if (args.length == 2 && args[1].equals("--image")) {
+            assembleFile(args[0], "data/listing.txt", "data/load.txt", "data/load.img");
+        } else if (args.length == 3 && args[1].equals("--image")) {
+            assembleFile(args[0], "data/listing.txt", "data/load.txt", args[2]);
+        } else if (args.length == 2 && args[1].equals("--stream")) {
+            // single pass for very large sources, see StreamingAssembler
+            try {
+                StreamingAssembler assembler = new StreamingAssembler();
+                assembler.assemble(args[0], "data/listing.txt", "data/load.txt");
+                System.out.println("Backpatched " + assembler.getBackpatchCount() + " forward references");
+                System.out.println("Listing file: data/listing.txt");
+                System.out.println("Load file: data/load.txt");
+            } catch (Exception e) {
+                System.err.println("Assembly failed: " + e.getMessage());
+            }
+        } else if (args.length == 2 && args[1].equals("--watch")) {
+            // re-assemble on every save, see IncrementalAssembler
+            try {
+                new IncrementalAssembler(args[0], "data/listing.txt", "data/load.txt").watch();
+            } catch (Exception e) {
+                System.err.println("Watch failed: " + e.getMessage());
+            }
+        } else if (args.length == 2 && args[1].equals("--optimize")) {
+            // peephole pass first, see PeepholeOptimizer
+            try {
+                PeepholeOptimizer optimizer = new PeepholeOptimizer();
+                List<String> optimized = optimizer.optimize(FileIO.readSourceFile(args[0]));
+                FileIO.writeFile("data/optimized.txt", optimized);
+                new Assembler().assemble(optimized).writeFiles("data/listing.txt", "data/load.txt", null);
+                System.out.print(optimizer.report());
+                System.out.println("Optimized source: data/optimized.txt");
+                System.out.println("Listing file: data/listing.txt");
+                System.out.println("Load file: data/load.txt");
+            } catch (Exception e) {
+                System.err.println("Assembly failed: " + e.getMessage());
+            }
+        } else {
+            System.err.println("Usage: java Assembler <assembly file> " +
+                    "[--image [image file] | --stream | --watch | --optimize]");
             System.exit(1);
         }
-        assembleFile(args[0], "data/listing.txt", "data/load.txt");
     }
 
     public static String assembleFile(String assemblyFile, String listingFile, String loadFile) {
+        return assembleFile(assemblyFile, listingFile, loadFile, null);
+    }
+
+    /**
+     * Assembles a file, optionally also writing a binary program image (see ProgramImage).
+     * @param imageFile image file name, or null to skip the image
+     * @return the load file name, or null if assembly failed
+     */
+    public static String assembleFile(String assemblyFile, String listingFile, String loadFile, String imageFile) {
         try {
-            assemble(assemblyFile, listingFile, loadFile);
+            assemble(assemblyFile, listingFile, loadFile, imageFile);
             System.out.println("Listing file: " + listingFile);
             System.out.println("Load file: " + loadFile);
+            if (imageFile != null) {
+                System.out.println("Image file: " + imageFile);
+            }
             return loadFile;
         } catch (Exception e) {
             System.err.println("Assembly failed: " + e.getMessage());
@@ -46,9 +106,41 @@ public class Assembler {
     public static void assemble(String assemblyFile,
                                 String listingFile,
                                 String loadFile) throws IOException {
-        // Read all lines from input file
-        List<String> inputLines = FileIO.readSourceFile(assemblyFile);
+        assemble(assemblyFile, listingFile, loadFile, null);
+    }
+
+    /**
+     * Assembles the input file into the output files, plus a binary program image if imageFile is set.
+     * The image entry point is the START label, if the program has one.
+     * @param assemblyFile
+     * @param listingFile
+     * @param loadFile
+     * @param imageFile image file name, or null to skip the image
+     * @throws IOException
+     */
+    public static void assemble(String assemblyFile,
+                                String listingFile,
+                                String loadFile,
+                                String imageFile) throws IOException {
+        new Assembler().assembleSourceFile(assemblyFile).writeFiles(listingFile, loadFile, imageFile);
+    }
 
+    /**
+     * Assembles a source file in memory.
+     * @throws IOException if the file can't be read
+     * @throws RuntimeException on an assembly error
+     */
+    public AssemblyResult assembleSourceFile(String assemblyFile) throws IOException {
+        return assemble(FileIO.readSourceFile(assemblyFile));
+    }
+
+    /**
+     * Assembles source lines in memory.
+     * @param inputLines the source, one line per element
+     * @return listing, load words and symbol table
+     * @throws RuntimeException on an assembly error
+     */
+    public AssemblyResult assemble(List<String> inputLines) {
         // first pass - build the labels (for ex. a label might be referenced before it is defined)
         buildLabels(inputLines);
 
@@ -56,55 +148,50 @@ public class Assembler {
         currentLoc = 0; // Reset location counter
         List<String> listingOutput = new ArrayList<>();
         List<String> loadOutput = new ArrayList<>();
+        int[] loadAddresses = new int[inputLines.size()];
+        short[] loadWords = new short[inputLines.size()];
 
         for (String line : inputLines) {
-            ProcessedLine result = processLine(line.trim());
+            ProcessedLine result = processLine(line);
 
             if (result.listingLine != null) {
                 listingOutput.add(result.listingLine);
             }
 
             if (result.loadLine != null) {
+                loadAddresses[loadOutput.size()] = result.address;
+                loadWords[loadOutput.size()] = (short) result.word;
                 loadOutput.add(result.loadLine);
             }
         }
 
-        FileIO.writeFile(listingFile, listingOutput);
-        FileIO.writeFile(loadFile, loadOutput);
+        int count = loadOutput.size();
+        return new AssemblyResult(listingOutput, loadOutput, Arrays.copyOf(loadAddresses, count),
+                Arrays.copyOf(loadWords, count), new HashMap<>(labels));
     }
 
-    private static void buildLabels(List<String> inputLines) {
+    private void buildLabels(List<String> inputLines) {
         labels.clear();
         currentLoc = 0;
 
         for (String line : inputLines) {
-            line = line.trim();
-
-            // Skip empty lines and comment-only lines
-            if (line.isEmpty() || line.startsWith(";")) {
-                continue;
-            }
+            // Skip empty lines and comment-only lines, but not labels
+            boolean statement = lexer.tokenize(line);
 
-            // strip comments
-            if (line.contains(";")) {
-                line = line.substring(0, line.indexOf(";")).trim();
+            // add label to the label map
+            if (lexer.hasLabel() && labels.put(lexer.label(), currentLoc) != null) {
+                throw new RuntimeException("Duplicate label " + lexer.label() + ": " + line.trim());
             }
-
-            // Hadd label to the label map
-            if (line.contains(":")) {
-                String label = line.substring(0, line.indexOf(":")).trim();
-                labels.put(label, currentLoc);
-                line = line.substring(line.indexOf(":") + 1).trim();
+            if (!statement) {
+                continue;
             }
 
-
             // Handle directives that affect location counter
-            if (line.startsWith("LOC")) {
-                String[] parts = line.split("\\s+");
-                if (parts.length >= 2) {
-                    currentLoc = Integer.parseInt(parts[1]);
+            if (lexer.mnemonicCode() == Encoder.LOC_DIRECTIVE) {
+                if (lexer.operandCount() >= 1) {
+                    currentLoc = locOperand(line);
                 }
-            } else if (line.startsWith("Data") || (!line.isEmpty() && !line.startsWith("LOC"))) {
+            } else {
                 currentLoc++;
             }
         }
@@ -116,132 +203,144 @@ public class Assembler {
     private static class ProcessedLine {
         String listingLine;
         String loadLine;
+        int address;
+        int word;
 
         ProcessedLine(String listingLine, String loadLine) {
             this.listingLine = listingLine;
             this.loadLine = loadLine;
         }
-    }
-
-    private static ProcessedLine processLine(String line) {
-        // Skip empty lines and comment-only lines
-        if (line.isEmpty() || line.startsWith(";")) {
-            return new ProcessedLine(null, null);
-        }
 
-        // strip out comments
-        String workingLine = line;
-        if (line.contains(";")) {
-            workingLine = line.substring(0, line.indexOf(";")).trim();
+        ProcessedLine(String listingLine, String loadLine, int address, int word) {
+            this(listingLine, loadLine);
+            this.address = address;
+            this.word = word;
         }
+    }
 
-        // remove label segment
-        String instructionPart = workingLine;
-        if (workingLine.contains(":")) {
-            instructionPart = workingLine.substring(workingLine.indexOf(":") + 1).trim();
+    private static final ProcessedLine EMPTY_LINE = new ProcessedLine(null, null);
 
-            if (instructionPart.isEmpty()) {
-                return new ProcessedLine(null, null);
-            }
+    private ProcessedLine processLine(String line) {
+        // Skip empty lines, comment-only lines and label-only lines
+        if (!lexer.tokenize(line)) {
+            return EMPTY_LINE;
         }
 
         // Handle assembler directives (only increment location with data directives)
-        if (instructionPart.startsWith("LOC")) {
-            return handleLOC(instructionPart, line);
+        int mnemonic = lexer.mnemonicCode();
+        if (mnemonic == Encoder.LOC_DIRECTIVE) {
+            return handleLOC(line);
         }
-        if (instructionPart.startsWith("Data")) {
-            return handleData(instructionPart, line);
+        if (mnemonic == Encoder.DATA_DIRECTIVE) {
+            return handleData(line);
         }
 
         // handle instructions and increment location
-        if (!instructionPart.isEmpty()) {
-            try {
-                String resolvedInstruction = handleLabels(instructionPart);
-
-                String listingLine = Encoder.encodeInstruction(currentLoc, resolvedInstruction, false);
-                String loadLine = Encoder.encodeInstruction(currentLoc, resolvedInstruction, true);
-                currentLoc++;
-                return new ProcessedLine(listingLine, loadLine);
-            } catch (Exception e) {
-                throw new RuntimeException("Error encoding instruction at location " +
-                        Encoder.convertToOctal(currentLoc, 6) + ": " + line + " - " + e.getMessage());
+        try {
+            int opcode = Encoder.opcodeOf(mnemonic);
+            if (opcode < 0) {
+                throw new RuntimeException("Unknown opcode: " + lexer.mnemonic());
             }
+            StringBuilder resolvedInstruction = new StringBuilder(32);
+            int count = resolveOperands(resolvedInstruction);
+            int word = Encoder.encode(opcode, operands, count);
+
+            StringBuilder loadLine = new StringBuilder(13);
+            appendOctal(loadLine, currentLoc).append(' ');
+            appendOctal(loadLine, word);
+            String listingLine = loadLine + " " + resolvedInstruction;
+            int address = currentLoc++;
+            return new ProcessedLine(listingLine, loadLine.toString(), address, word);
+        } catch (Exception e) {
+            throw new RuntimeException("Error encoding instruction at location " +
+                    Encoder.convertToOctal(currentLoc, 6) + ": " + line + " - " + e.getMessage());
         }
-
-        return new ProcessedLine(null, null);
     }
 
     /**
-     * handles label references in an instruction to their numeric addresses.
-     * For example: "JMA 0, 0, LOOP" becomes "JMA 0, 0, 11" if LOOP is at location 11
+     * Resolves the current line's operands into operands[], substituting label addresses, and writes the
+     * instruction with its labels resolved to the listing text.
+     * For example: "JMA 0, 0, LOOP" becomes "JMA 0 0 11" if LOOP is at location 11
+     * @return number of operands
      */
-    private static String handleLabels(String instruction) {
-        String[] parts = instruction.split("[,\\s]+");
-        StringBuilder resolved = new StringBuilder();
-
-        for (int i = 0; i < parts.length; i++) {
-            String part = parts[i].trim();
-
-            String cleaned = part.replaceAll("[,]", "").trim();
-
-            if (labels.containsKey(cleaned)) {
-                resolved.append(labels.get(cleaned));
+    private int resolveOperands(StringBuilder resolved) {
+        lexer.appendMnemonic(resolved);
+        int count = lexer.operandCount();
+        for (int i = 0; i < count; i++) {
+            resolved.append(' ');
+            if (lexer.isNumeric(i)) {
+                operands[i] = lexer.value(i);
+                lexer.appendOperand(resolved, i);
             } else {
-                resolved.append(part);
-            }
-
-            if (i < parts.length - 1) {
-                resolved.append(" ");
+                String name = lexer.operand(i);
+                Integer address = labels.get(name);
+                if (address == null) {
+                    throw new NumberFormatException("For input string: \"" + name + "\"");
+                }
+                operands[i] = address;
+                resolved.append(address.intValue());
             }
         }
-
-        return resolved.toString();
+        return count;
     }
 
-    private static ProcessedLine handleLOC(String cleanLine, String originalLine) {
-        String[] parts = cleanLine.split("\\s+");
-        if (parts.length < 2) {
+    private ProcessedLine handleLOC(String line) {
+        String originalLine = line.trim();
+        if (lexer.operandCount() < 1) {
             throw new RuntimeException("LOC directive requires a location: " + originalLine);
         }
+        currentLoc = locOperand(originalLine);
+        // LOC appears in listing but not in load file
+        return new ProcessedLine(originalLine, null);
+    }
 
-        try {
-            currentLoc = Integer.parseInt(parts[1]);
-            // LOC appears in listing but not in load file
-            return new ProcessedLine(originalLine, null);
-        } catch (NumberFormatException e) {
-            throw new RuntimeException("Invalid location in LOC directive: " + originalLine);
+    private int locOperand(String line) {
+        if (!lexer.isNumeric(0)) {
+            throw new RuntimeException("Invalid location in LOC directive: " + line.trim());
         }
+        return lexer.value(0);
     }
 
-    private static ProcessedLine handleData(String cleanLine, String originalLine) {
-        String[] parts = cleanLine.split("\\s+");
-        if (parts.length < 2) {
+    private ProcessedLine handleData(String line) {
+        String originalLine = line.trim();
+        if (lexer.operandCount() < 1) {
             throw new RuntimeException("Data directive requires a value: " + originalLine);
         }
 
         int dataValue;
-        String dataValueStr = parts[1];
-
         // Handle numeric data
-        try {
-            dataValue = Integer.parseInt(dataValueStr);
-        } catch (NumberFormatException e) {
+        if (lexer.isNumeric(0)) {
+            dataValue = lexer.value(0);
+        } else {
             // Handle label references
-            if (labels.containsKey(dataValueStr)) {
-                dataValue = labels.get(dataValueStr);
-            } else {
+            String dataValueStr = lexer.operand(0);
+            Integer address = labels.get(dataValueStr);
+            if (address == null) {
                 throw new RuntimeException("Undefined label in Data directive: " +
                         dataValueStr + " in line: " + originalLine);
             }
+            dataValue = address;
         }
 
-        String locationOctal = Encoder.convertToOctal(currentLoc, 6);
-        String dataOctal = Encoder.convertToOctal(dataValue, 6);
+        StringBuilder loadLine = new StringBuilder(13);
+        appendOctal(loadLine, currentLoc).append(' ');
+        appendOctal(loadLine, dataValue);
         currentLoc++;
 
-        String listingLine = locationOctal + " " + dataOctal + " " + originalLine;
-        String loadLine = locationOctal + " " + dataOctal;
+        String listingLine = loadLine + " " + originalLine;
+        return new ProcessedLine(listingLine, loadLine.toString(), currentLoc - 1, dataValue);
+    }
 
-        return new ProcessedLine(listingLine, loadLine);
+    /**
+     * Same as Encoder.convertToOctal(value, 6), appended in place.
+     */
+    static StringBuilder appendOctal(StringBuilder out, int value) {
+        if (value < 0 || value > 0777777) {
+            return out.append(Encoder.convertToOctal(value, 6));
+        }
+        for (int shift = 15; shift >= 0; shift -= 3) {
+            out.append((char) ('0' + ((value >> shift) & 7)));
+        }
+        return out;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,107 @@
+package src.assembler;
+
+import src.simulator.FileIO;
+import src.simulator.ProgramImage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Output of one assembly, held in memory: listing and load file lines, the assembled words with their addresses,
+ * and the symbol table.
+ */
+public class AssemblyResult {
+    private final List<String> listing;
+    private final List<String> load;
+    private final int[] addresses;
+    private final short[] words;
+    private final Map<String, Integer> symbols;
+
+    AssemblyResult(List<String> listing, List<String> load, int[] addresses, short[] words,
+                   Map<String, Integer> symbols) {
+        this.listing = Collections.unmodifiableList(listing);
+        this.load = Collections.unmodifiableList(load);
+        this.addresses = addresses;
+        this.words = words;
+        this.symbols = Collections.unmodifiableMap(symbols);
+    }
+
+    public List<String> getListing() {
+        return listing;
+    }
+
+    public List<String> getLoadLines() {
+        return load;
+    }
+
+    /**
+     * @return number of assembled words
+     */
+    public int size() {
+        return words.length;
+    }
+
+    public int getAddress(int i) {
+        return addresses[i];
+    }
+
+    public short getWord(int i) {
+        return words[i];
+    }
+
+    /**
+     * @return label name to address
+     */
+    public Map<String, Integer> getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @return the START label's address, or -1 if there is none
+     */
+    public int getEntryPoint() {
+        return symbols.getOrDefault("START", -1);
+    }
+
+    public ProgramImage toImage() {
+        return ProgramImage.build(addresses, words, words.length, getEntryPoint());
+    }
+
+    /**
+     * @return the symbol map, one "address label" line per label in octal address order
+     */
+    public List<String> getSymbolMap() {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(symbols.entrySet());
+        entries.sort(Map.Entry.<String, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+        List<String> lines = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Integer> entry : entries) {
+            lines.add(Encoder.convertToOctal(entry.getValue(), 6) + " " + entry.getKey());
+        }
+        return lines;
+    }
+
+    /**
+     * @return the symbol map file written next to a listing: the listing's name with a .sym extension
+     */
+    public static String symbolFile(String listingFile) {
+        int dot = listingFile.lastIndexOf('.');
+        int slash = Math.max(listingFile.lastIndexOf('/'), listingFile.lastIndexOf('\\'));
+        return (dot > slash + 1 ? listingFile.substring(0, dot) : listingFile) + ".sym";
+    }
+
+    /**
+     * Write the listing and load files, the symbol map next to the listing, and a program image if imageFile
+     * is set.
+     */
+    public void writeFiles(String listingFile, String loadFile, String imageFile) throws IOException {
+        FileIO.writeFile(listingFile, listing);
+        FileIO.writeFile(symbolFile(listingFile), getSymbolMap());
+        FileIO.writeFile(loadFile, load);
+        if (imageFile != null) {
+            toImage().write(imageFile);
+        }
+    }
+}
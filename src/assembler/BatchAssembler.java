@@ -0,0 +1,115 @@
+package src.assembler;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Assembles many source files concurrently in one JVM, one Assembler instance per file. Each source foo.txt
+ * produces foo.lst and foo.load (and foo.img with --image) in the output directory, or next to the source.
+ *
+ * Usage: java src.assembler.BatchAssembler [--threads n] [--out dir] [--image] file...
+ */
+public class BatchAssembler {
+
+    /**
+     * Outcome of one file.
+     */
+    public static class Outcome {
+        public final String sourceFile;
+        public final AssemblyResult result; // null if assembly failed
+        public final String error;
+
+        Outcome(String sourceFile, AssemblyResult result, String error) {
+            this.sourceFile = sourceFile;
+            this.result = result;
+            this.error = error;
+        }
+
+        public boolean succeeded() {
+            return result != null;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String outDir = null;
+        boolean image = false;
+        List<String> files = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--out": outDir = args[++i]; break;
+                case "--image": image = true; break;
+                default: files.add(args[i]);
+            }
+        }
+        if (files.isEmpty() || threads < 1) {
+            System.err.println("Usage: java BatchAssembler [--threads n] [--out dir] [--image] file...");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        List<Outcome> outcomes = assembleAll(files, threads, outDir, image);
+        int failed = 0;
+        for (Outcome outcome : outcomes) {
+            if (!outcome.succeeded()) {
+                System.err.println(outcome.sourceFile + ": " + outcome.error);
+                failed++;
+            }
+        }
+        System.out.printf("Assembled %d of %d files in %d ms on %d threads%n", outcomes.size() - failed,
+                outcomes.size(), (System.nanoTime() - start) / 1_000_000, threads);
+        if (failed > 0) System.exit(2);
+    }
+
+    /**
+     * Assemble files on a pool of threads, writing each file's outputs as soon as it is done.
+     * @param outDir directory for the outputs, or null to write them next to each source
+     * @param image also write a program image per file
+     * @return one outcome per file, in the order given
+     */
+    public static List<Outcome> assembleAll(List<String> files, int threads, String outDir, boolean image)
+            throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Outcome>> futures = new ArrayList<>();
+            for (String file : files) {
+                futures.add(pool.submit(() -> assembleOne(file, outDir, image)));
+            }
+            List<Outcome> outcomes = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    outcomes.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    outcomes.add(new Outcome(files.get(i), null, String.valueOf(e.getCause())));
+                }
+            }
+            return outcomes;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Outcome assembleOne(String sourceFile, String outDir, boolean image) {
+        try {
+            AssemblyResult result = new Assembler().assembleSourceFile(sourceFile);
+            String base = outputBase(sourceFile, outDir);
+            result.writeFiles(base + ".lst", base + ".load", image ? base + ".img" : null);
+            return new Outcome(sourceFile, result, null);
+        } catch (Exception e) {
+            return new Outcome(sourceFile, null, e.getMessage());
+        }
+    }
+
+    private static String outputBase(String sourceFile, String outDir) {
+        File source = new File(sourceFile);
+        String name = source.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) name = name.substring(0, dot);
+        File dir = (outDir != null) ? new File(outDir) : source.getAbsoluteFile().getParentFile();
+        return new File(dir, name).getPath();
+    }
+}
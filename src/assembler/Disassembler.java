@@ -0,0 +1,160 @@
+package src.assembler;
+
+import src.simulator.FileIO;
+import src.simulator.ProgramImage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns 16-bit words back into assembler syntax, using the Opcode table. Each word's text is built the first time
+ * it is asked for and kept in a 65536-entry table, so after that disassembling a word is one array lookup.
+ *
+ * A word is shown as an instruction only if assembling that text gives the same word back; anything else (an
+ * unused opcode, or bits set outside the instruction's fields) is data.
+ *
+ * Usage: java src.assembler.Disassembler [--listing file] loadfile|imagefile
+ */
+public class Disassembler {
+    private static final String DATA = "";
+
+    // word to its text, DATA for words that aren't instructions, null until first asked for. Entries are
+    // immutable strings, so threads that race to fill one just build the same text twice.
+    private static final String[] TEXT = new String[1 << 16];
+
+    public static void main(String[] args) throws IOException {
+        String listingFile = null;
+        String inputFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--listing") && i + 1 < args.length) {
+                listingFile = args[++i];
+            } else {
+                inputFile = args[i];
+            }
+        }
+        if (inputFile == null) {
+            System.err.println("Usage: java Disassembler [--listing file] loadfile|imagefile");
+            System.exit(1);
+        }
+
+        List<String> listing = ProgramImage.isImage(inputFile)
+                ? listing(ProgramImage.read(inputFile))
+                : listing(FileIO.readSourceFile(inputFile));
+        if (listingFile == null) {
+            listing.forEach(System.out::println);
+        } else {
+            FileIO.writeFile(listingFile, listing);
+            System.out.println("Listing file: " + listingFile);
+        }
+    }
+
+    /**
+     * @return the instruction in assembler syntax, e.g. "LDR 3,0,10,1", or "" if the word is not an instruction
+     */
+    public static String text(int word) {
+        word &= 0xFFFF;
+        String text = TEXT[word];
+        if (text == null) {
+            text = render(word);
+            TEXT[word] = text;
+        }
+        return text;
+    }
+
+    /**
+     * @return true if the word is an instruction, i.e. assembling text(word) gives the word back
+     */
+    public static boolean isInstruction(int word) {
+        return !text(word).isEmpty();
+    }
+
+    private static String render(int word) {
+        Opcode op = Opcode.of(Opcode.codeOf(word));
+        if (op == null) return DATA;
+        int[] operands = new int[op.format.operandCount()];
+        int count = op.decode(word, operands);
+        if (op.encode(operands, count) != word) return DATA;
+
+        // trailing zero operands are left out, as in the source, down to the required ones
+        while (count > op.format.required && operands[count - 1] == 0) count--;
+        if (count == 0) return op.name();
+        StringBuilder text = new StringBuilder(16).append(op.name()).append(' ');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) text.append(',');
+            text.append(operands[i]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Rebuilds a listing from (address, word) pairs: a LOC line wherever the addresses jump, then one line per
+     * word in the listing file's layout, with the instruction or a Data directive as the source.
+     */
+    public static List<String> listing(int[] addresses, short[] words, int count) {
+        List<String> listing = new ArrayList<>(count + 8);
+        int next = -1;
+        for (int i = 0; i < count; i++) {
+            int address = addresses[i];
+            int word = words[i] & 0xFFFF;
+            if (address != next) {
+                listing.add("LOC " + address);
+            }
+            StringBuilder line = new StringBuilder(32);
+            Assembler.appendOctal(line, address).append(' ');
+            Assembler.appendOctal(line, word).append(' ');
+            String text = text(word);
+            if (text.isEmpty()) {
+                line.append("Data ").append(word);
+            } else {
+                line.append(text);
+            }
+            listing.add(line.toString());
+            next = address + 1;
+        }
+        return listing;
+    }
+
+    /**
+     * Rebuilds a listing from the lines of a load file.
+     * @throws RuntimeException on a line that isn't an octal address and word
+     */
+    public static List<String> listing(List<String> loadLines) {
+        int[] addresses = new int[loadLines.size()];
+        short[] words = new short[loadLines.size()];
+        int count = 0;
+        for (String line : loadLines) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#") || trimmed.startsWith(";")) continue;
+            String[] fields = trimmed.split("\\s+");
+            try {
+                addresses[count] = Integer.parseInt(fields[0], 8);
+                words[count] = (short) Integer.parseInt(fields[1], 8);
+            } catch (RuntimeException e) {
+                throw new RuntimeException("Malformed load file line: " + line);
+            }
+            count++;
+        }
+        return listing(addresses, words, count);
+    }
+
+    /**
+     * Rebuilds a listing from a program image, or a memory dump saved as one.
+     */
+    public static List<String> listing(ProgramImage image) {
+        int total = 0;
+        for (ProgramImage.Segment segment : image.getSegments()) {
+            total += segment.words.length;
+        }
+        int[] addresses = new int[total];
+        short[] words = new short[total];
+        int count = 0;
+        for (ProgramImage.Segment segment : image.getSegments()) {
+            for (int i = 0; i < segment.words.length; i++) {
+                addresses[count] = segment.start + i;
+                words[count++] = segment.words[i];
+            }
+        }
+        return listing(addresses, words, count);
+    }
+}
@@ -16,6 +16,7 @@ public class EncoderTest {
         testRegisterToRegisterInstructions();
         testShiftRotateInstructions();
         testIOInstructions();
+        testFloatingPointInstructions();
         testEdgeCases();
         testAdditionalCases();
 
@@ -115,6 +116,19 @@ public class EncoderTest {
     }
 
 
+    private static void testFloatingPointInstructions() {
+        System.out.println("\n--- Testing Floating Point Instructions ---");
+
+        assertEncode("FADD 1,0,10", "066412", "FADD 1,0,10");
+        assertEncode("FSUB 0,1,5", "070105", "FSUB 0,1,5");
+        assertEncode("VADD 1,2,20", "072624", "VADD 1,2,20");
+        assertEncode("VSUB 0,0,3", "074003", "VSUB 0,0,3");
+        assertEncode("CNVRT 2,0,7", "077007", "CNVRT 2,0,7 (5-character mnemonic)");
+        assertEncode("LDFR 1,0,12", "120414", "LDFR 1,0,12");
+        assertEncode("STFR 0,3,31 1", "122377", "STFR with indexing and indirect addressing");
+    }
+
+
     private static void testEdgeCases() {
         System.out.println("\n--- Testing Edge Cases ---");
 
@@ -127,6 +141,11 @@ public class EncoderTest {
         assertEncode("STR 2,1,10 1", "005152", "STR with indirect addressing");
         assertEncode("MLT 3,3", "161700", "MLT with max registers (rx=3, ry=3)");
         assertEncode("SRC 3,15,1,1", "063717", "SRC with max values (r=3, count=15, L/R=1, A/L=1)");
+
+        // Lexer: separators, labels and comments
+        assertEncode("LDR   3 ,0,, 15", "003417", "LDR with mixed spaces and commas");
+        assertEncode("LOOP: LDR 3,0,15 ; load", "003417", "LDR with label and comment");
+        assertEncode("\tJZ 1,0,+7", "020407", "JZ with leading tab and signed address");
     }
 
 
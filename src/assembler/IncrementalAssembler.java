@@ -0,0 +1,503 @@
+package src.assembler;
+
+import src.simulator.FileIO;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Re-assembles a source file after edits without starting over. Output is the same as Assembler's.
+ *
+ * Each distinct source line is tokenized once and kept, with the word it last encoded to and the label addresses
+ * that word was encoded with. On a rebuild only new or edited lines are tokenized, and only lines whose labels
+ * moved are encoded again. Listing and load lines that changed are then patched in place in the output files
+ * (the files are rewritten only when a line changed length or lines were added or removed), and every word that
+ * changed is passed to the WordListener, e.g. to patch the memory of a loaded simulator.
+ *
+ * An IncrementalAssembler keeps its cache between builds, so make one per source file and reuse it, or run
+ * watch() to rebuild whenever the source is saved.
+ *
+ * Usage: java src.assembler.IncrementalAssembler <assembly file> [--watch] [--listing file] [--load file]
+ */
+public class IncrementalAssembler {
+    private static final String NEWLINE = System.lineSeparator();
+    private static final long DEBOUNCE_MS = 30;
+
+    private static final int BLANK = 0;
+    private static final int LOC = 1;
+    private static final int DATA = 2;
+    private static final int INSTRUCTION = 3;
+
+    /**
+     * Called for each word whose value (or address) changed since the previous build.
+     */
+    public interface WordListener {
+        void wordChanged(int address, short word);
+    }
+
+    /**
+     * What a build did.
+     */
+    public static class Update {
+        public int lines;
+        public int tokenized;       // lines not found in the cache
+        public int encoded;         // lines encoded, because they are new or their labels moved
+        public int wordsChanged;
+        public int loadPatched;     // load lines patched in place, -1 if the file was rewritten
+        public int listingPatched;  // listing lines patched in place, -1 if the file was rewritten
+        public long nanos;
+
+        @Override
+        public String toString() {
+            return String.format("%d lines, %d tokenized, %d encoded, %d words changed; load %s, listing %s; %.2f ms",
+                    lines, tokenized, encoded, wordsChanged, describe(loadPatched), describe(listingPatched),
+                    nanos / 1e6);
+        }
+
+        private static String describe(int patched) {
+            return patched < 0 ? "rewritten" : patched + " lines patched";
+        }
+    }
+
+    /**
+     * A tokenized source line, plus its last encoding.
+     */
+    private static class Line {
+        final String text;      // trimmed, for the listing and error messages
+        final String label;     // label defined on this line, or null
+        final int kind;
+        final int opcode;       // INSTRUCTION only, -1 if the mnemonic is unknown
+        final String mnemonic;
+        final String[] operandText;
+        final int[] values;     // numeric operands
+        final String[] refs;    // label operands, null for numbers
+        final boolean hasRefs;
+
+        // last encoding: word and listing text, and the label addresses they were made with
+        boolean encoded;
+        int[] encodedWith;
+        int word;
+        String listingText;
+
+        Line(String source, Lexer lexer) {
+            text = source.trim();
+            boolean statement = lexer.tokenize(source);
+            label = lexer.hasLabel() ? lexer.label() : null;
+            int mnemonicCode = statement ? lexer.mnemonicCode() : 0;
+            kind = !statement ? BLANK
+                    : mnemonicCode == Encoder.LOC_DIRECTIVE ? LOC
+                    : mnemonicCode == Encoder.DATA_DIRECTIVE ? DATA
+                    : INSTRUCTION;
+            opcode = kind == INSTRUCTION ? Encoder.opcodeOf(mnemonicCode) : -1;
+            mnemonic = statement ? lexer.mnemonic() : null;
+
+            int count = statement ? lexer.operandCount() : 0;
+            operandText = new String[count];
+            values = new int[count];
+            refs = new String[count];
+            boolean anyRef = false;
+            for (int i = 0; i < count; i++) {
+                operandText[i] = lexer.operand(i);
+                if (lexer.isNumeric(i)) {
+                    values[i] = lexer.value(i);
+                } else {
+                    refs[i] = operandText[i];
+                    anyRef = true;
+                }
+            }
+            hasRefs = anyRef;
+        }
+    }
+
+    private final String sourceFile;
+    private final String listingFile;
+    private final String loadFile;
+    private final Lexer lexer = new Lexer();
+    private final int[] operands = new int[Lexer.MAX_OPERANDS];
+    private final int[] refAddresses = new int[Lexer.MAX_OPERANDS];
+    private final Map<String, Integer> labels = new HashMap<>();
+    private Map<String, Line> cache = new HashMap<>();
+    private WordListener listener;
+
+    // previous build, or the output files found on disk before the first build
+    private List<String> previousSource;
+    private List<String> previousListing;
+    private List<String> previousLoad;
+    private int[] previousAddresses;
+    private short[] previousWords;
+    private boolean previousLoaded;
+
+    public IncrementalAssembler(String sourceFile, String listingFile, String loadFile) {
+        this.sourceFile = sourceFile;
+        this.listingFile = listingFile;
+        this.loadFile = loadFile;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String source = null;
+        String listingFile = "data/listing.txt";
+        String loadFile = "data/load.txt";
+        boolean watch = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--watch": watch = true; break;
+                case "--listing": listingFile = args[++i]; break;
+                case "--load": loadFile = args[++i]; break;
+                default: source = args[i];
+            }
+        }
+        if (source == null) {
+            System.err.println("Usage: java IncrementalAssembler <assembly file> [--watch] [--listing file] " +
+                    "[--load file]");
+            System.exit(1);
+        }
+
+        IncrementalAssembler assembler = new IncrementalAssembler(source, listingFile, loadFile);
+        if (watch) {
+            assembler.watch();
+        } else {
+            System.out.println(assembler.build());
+        }
+    }
+
+    public void setListener(WordListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Rebuild from the source file, patching the listing and load files.
+     * @throws IOException on a read or write error
+     * @throws RuntimeException on an assembly error, in which case the outputs are left as they were
+     */
+    public Update build() throws IOException {
+        long start = System.nanoTime();
+        List<String> source = FileIO.readSourceFile(sourceFile);
+        if (!previousLoaded) {
+            readPreviousOutputs();
+        }
+
+        Update update = new Update();
+        update.lines = source.size();
+        if (source.equals(previousSource)) {
+            update.nanos = System.nanoTime() - start;
+            return update;
+        }
+
+        Line[] lines = tokenize(source, update);
+        buildLabels(lines);
+
+        List<String> listing = new ArrayList<>(lines.length);
+        List<String> load = new ArrayList<>(lines.length);
+        int[] addresses = new int[lines.length];
+        short[] words = new short[lines.length];
+        int currentLoc = 0;
+        for (int i = 0; i < lines.length; i++) {
+            Line line = lines[i];
+            switch (line.kind) {
+                case LOC:
+                    if (line.values.length < 1) {
+                        throw new RuntimeException("LOC directive requires a location: " + line.text);
+                    }
+                    currentLoc = line.values[0];
+                    listing.add(line.text);
+                    break;
+                case DATA:
+                case INSTRUCTION:
+                    int word = (line.kind == DATA) ? dataValue(line) : encode(line, source.get(i), currentLoc, update);
+                    StringBuilder loadLine = new StringBuilder(13);
+                    Assembler.appendOctal(loadLine, currentLoc).append(' ');
+                    Assembler.appendOctal(loadLine, word);
+                    listing.add(loadLine + " " + (line.kind == DATA ? line.text : line.listingText));
+                    addresses[load.size()] = currentLoc;
+                    words[load.size()] = (short) word;
+                    load.add(loadLine.toString());
+                    currentLoc++;
+                    break;
+                default:
+                    break;
+            }
+        }
+        addresses = Arrays.copyOf(addresses, load.size());
+        words = Arrays.copyOf(words, load.size());
+
+        update.loadPatched = patchFile(loadFile, previousLoad, load);
+        update.listingPatched = patchFile(listingFile, previousListing, listing);
+        update.wordsChanged = notifyChangedWords(addresses, words);
+
+        previousSource = source;
+        previousListing = listing;
+        previousLoad = load;
+        previousAddresses = addresses;
+        previousWords = words;
+        update.nanos = System.nanoTime() - start;
+        return update;
+    }
+
+    /**
+     * Build, then rebuild each time the source file is saved, until the thread is interrupted. Assembly errors
+     * are reported and the previous outputs kept.
+     */
+    public void watch() throws IOException, InterruptedException {
+        Path source = Paths.get(sourceFile).toAbsolutePath();
+        try (WatchService watcher = source.getFileSystem().newWatchService()) {
+            source.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            System.out.println("Watching " + sourceFile);
+            buildAndReport();
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = sourceChanged(key, source);
+                if (!changed) continue;
+
+                // editors often save in several writes, wait for the last one
+                Thread.sleep(DEBOUNCE_MS);
+                while ((key = watcher.poll()) != null) {
+                    sourceChanged(key, source);
+                }
+                buildAndReport();
+            }
+        }
+    }
+
+    private static boolean sourceChanged(WatchKey key, Path source) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || source.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    private void buildAndReport() {
+        try {
+            System.out.println(build());
+        } catch (Exception e) {
+            System.err.println("Assembly failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Look every line up in the cache, tokenizing the ones not seen before. Lines no longer in the source are
+     * dropped from the cache.
+     */
+    private Line[] tokenize(List<String> source, Update update) {
+        Map<String, Line> next = new HashMap<>(Math.max(16, source.size() * 2));
+        Line[] lines = new Line[source.size()];
+        for (int i = 0; i < lines.length; i++) {
+            String text = source.get(i);
+            Line line = next.get(text);
+            if (line == null) {
+                line = cache.get(text);
+                if (line == null) {
+                    line = new Line(text, lexer);
+                    update.tokenized++;
+                }
+                next.put(text, line);
+            }
+            lines[i] = line;
+        }
+        cache = next;
+        return lines;
+    }
+
+    private void buildLabels(Line[] lines) {
+        labels.clear();
+        int currentLoc = 0;
+        for (Line line : lines) {
+            if (line.label != null && labels.put(line.label, currentLoc) != null) {
+                throw new RuntimeException("Duplicate label " + line.label + ": " + line.text.trim());
+            }
+            if (line.kind == LOC) {
+                if (line.values.length >= 1) {
+                    if (line.refs[0] != null) {
+                        throw new RuntimeException("Invalid location in LOC directive: " + line.text);
+                    }
+                    currentLoc = line.values[0];
+                }
+            } else if (line.kind != BLANK) {
+                currentLoc++;
+            }
+        }
+    }
+
+    private int dataValue(Line line) {
+        if (line.values.length < 1) {
+            throw new RuntimeException("Data directive requires a value: " + line.text);
+        }
+        if (line.refs[0] == null) {
+            return line.values[0];
+        }
+        Integer address = labels.get(line.refs[0]);
+        if (address == null) {
+            throw new RuntimeException("Undefined label in Data directive: " + line.refs[0] + " in line: " +
+                    line.text);
+        }
+        return address;
+    }
+
+    /**
+     * @return the line's word, encoded again only if it is new or one of its labels moved
+     */
+    private int encode(Line line, String source, int location, Update update) {
+        try {
+            if (line.opcode < 0) {
+                throw new RuntimeException("Unknown opcode: " + line.mnemonic);
+            }
+            int count = line.values.length;
+            for (int i = 0; i < count; i++) {
+                if (line.refs[i] != null) {
+                    Integer address = labels.get(line.refs[i]);
+                    if (address == null) {
+                        throw new NumberFormatException("For input string: \"" + line.refs[i] + "\"");
+                    }
+                    refAddresses[i] = address;
+                } else {
+                    refAddresses[i] = 0;
+                }
+            }
+            if (line.encoded && (!line.hasRefs || Arrays.equals(line.encodedWith, 0, count, refAddresses, 0, count))) {
+                return line.word;
+            }
+
+            StringBuilder resolved = new StringBuilder(32).append(line.mnemonic);
+            for (int i = 0; i < count; i++) {
+                operands[i] = (line.refs[i] != null) ? refAddresses[i] : line.values[i];
+                resolved.append(' ');
+                if (line.refs[i] != null) {
+                    resolved.append(refAddresses[i]);
+                } else {
+                    resolved.append(line.operandText[i]);
+                }
+            }
+            line.word = Encoder.encode(line.opcode, operands, count);
+            line.listingText = resolved.toString();
+            line.encodedWith = Arrays.copyOf(refAddresses, count);
+            line.encoded = true;
+            update.encoded++;
+            return line.word;
+        } catch (Exception e) {
+            throw new RuntimeException("Error encoding instruction at location " +
+                    Encoder.convertToOctal(location, 6) + ": " + source + " - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Before the first build, take the output files already on disk as the previous build, so a program loaded
+     * from them is patched with just the words that differ.
+     */
+    private void readPreviousOutputs() {
+        previousLoaded = true;
+        try {
+            if (new File(listingFile).exists()) {
+                previousListing = FileIO.readSourceFile(listingFile);
+            }
+            if (new File(loadFile).exists()) {
+                List<String> load = FileIO.readSourceFile(loadFile);
+                int[] addresses = new int[load.size()];
+                short[] words = new short[load.size()];
+                for (int i = 0; i < load.size(); i++) {
+                    String[] parts = load.get(i).trim().split("\\s+");
+                    addresses[i] = Integer.parseInt(parts[0], 8);
+                    words[i] = (short) Integer.parseInt(parts[1], 8);
+                }
+                previousLoad = load;
+                previousAddresses = addresses;
+                previousWords = words;
+            }
+        } catch (IOException | RuntimeException e) {
+            // unreadable outputs are simply rewritten
+            previousListing = null;
+            previousLoad = null;
+            previousAddresses = null;
+            previousWords = null;
+        }
+    }
+
+    /**
+     * Bring a file up to date. When it has the same number of lines as the previous build and every changed line
+     * keeps its length, only the changed lines are written, in place; otherwise the file is rewritten.
+     * @return number of lines patched, or -1 if the file was rewritten
+     */
+    private static int patchFile(String fileName, List<String> previous, List<String> lines) throws IOException {
+        File file = new File(fileName);
+        if (previous == null || previous.size() != lines.size()) {
+            FileIO.writeFile(fileName, lines);
+            return -1;
+        }
+
+        int newlineBytes = NEWLINE.getBytes(StandardCharsets.UTF_8).length;
+        List<long[]> patches = new ArrayList<>(); // {offset, line}
+        long offset = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            String before = previous.get(i);
+            String after = lines.get(i);
+            int length = StreamingAssembler.utf8Length(before);
+            if (!before.equals(after)) {
+                if (StreamingAssembler.utf8Length(after) != length) {
+                    FileIO.writeFile(fileName, lines);
+                    return -1;
+                }
+                patches.add(new long[] {offset, i});
+            }
+            offset += length + newlineBytes;
+        }
+        if (file.length() != offset) {
+            // changed by someone else since
+            FileIO.writeFile(fileName, lines);
+            return -1;
+        }
+
+        if (!patches.isEmpty()) {
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                for (long[] patch : patches) {
+                    out.seek(patch[0]);
+                    out.write(lines.get((int) patch[1]).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return patches.size();
+    }
+
+    /**
+     * Pass every word that differs from the previous build to the listener.
+     * @return number of changed words
+     */
+    private int notifyChangedWords(int[] addresses, short[] words) {
+        boolean aligned = previousAddresses != null && Arrays.equals(previousAddresses, addresses);
+        Map<Integer, Short> before = null;
+        if (!aligned && previousAddresses != null) {
+            before = new HashMap<>(previousAddresses.length * 2);
+            for (int i = 0; i < previousAddresses.length; i++) {
+                before.put(previousAddresses[i], previousWords[i]);
+            }
+        }
+
+        int changed = 0;
+        for (int i = 0; i < words.length; i++) {
+            boolean same;
+            if (aligned) {
+                same = previousWords[i] == words[i];
+            } else {
+                Short old = (before != null) ? before.get(addresses[i]) : null;
+                same = old != null && old == words[i];
+            }
+            if (!same) {
+                changed++;
+                if (listener != null) {
+                    listener.wordChanged(addresses[i], words[i]);
+                }
+            }
+        }
+        return changed;
+    }
+}
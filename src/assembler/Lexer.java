@@ -0,0 +1,193 @@
+package src.assembler;
+
+/**
+ * Single-pass tokenizer for one source line:
+ *   [label:] mnemonic [operand {, | whitespace} operand ...] [; comment]
+ *
+ * Tokens are kept as offsets into the line, numeric operands are parsed while scanning, and the mnemonic is
+ * packed into an int for table lookup, so tokenizing a line creates no strings. Strings are only made on request
+ * (label names, label operands). A Lexer is reused line after line and is not thread-safe.
+ */
+public class Lexer {
+    public static final int MAX_OPERANDS = 8;
+
+    private CharSequence line;
+    private int labelStart;
+    private int labelEnd;
+    private int mnemonicStart;
+    private int mnemonicEnd;
+    private int operandCount;
+    private final int[] operandStart = new int[MAX_OPERANDS];
+    private final int[] operandEnd = new int[MAX_OPERANDS];
+    private final int[] operandValue = new int[MAX_OPERANDS];
+    private final boolean[] operandNumeric = new boolean[MAX_OPERANDS];
+
+    /**
+     * Tokenize a line, replacing the previous line's tokens.
+     * @return true if the line has a statement (a mnemonic or directive), false for blank, comment-only and
+     * label-only lines
+     * @throws IllegalArgumentException if the line has more than MAX_OPERANDS operands
+     */
+    public boolean tokenize(CharSequence line) {
+        this.line = line;
+        labelStart = -1;
+        labelEnd = -1;
+        mnemonicStart = -1;
+        mnemonicEnd = -1;
+        operandCount = 0;
+
+        // the statement ends at the comment
+        int end = line.length();
+        for (int i = 0; i < end; i++) {
+            if (line.charAt(i) == ';') {
+                end = i;
+                break;
+            }
+        }
+
+        int pos = skipSpaces(0, end);
+        for (int i = pos; i < end; i++) {
+            if (line.charAt(i) == ':') {
+                labelStart = pos;
+                labelEnd = trimEnd(pos, i);
+                pos = skipSpaces(i + 1, end);
+                break;
+            }
+        }
+        if (pos == end) return false;
+
+        mnemonicStart = pos;
+        while (pos < end && !isSeparator(line.charAt(pos))) pos++;
+        mnemonicEnd = pos;
+
+        while (true) {
+            while (pos < end && isSeparator(line.charAt(pos))) pos++;
+            if (pos == end) break;
+            if (operandCount == MAX_OPERANDS) {
+                throw new IllegalArgumentException("Too many operands: " + line);
+            }
+            int start = pos;
+            while (pos < end && !isSeparator(line.charAt(pos))) pos++;
+            scanOperand(operandCount++, start, pos);
+        }
+        return true;
+    }
+
+    public boolean hasLabel() {
+        return labelStart >= 0;
+    }
+
+    public String label() {
+        return line.subSequence(labelStart, labelEnd).toString();
+    }
+
+    public boolean hasStatement() {
+        return mnemonicStart >= 0;
+    }
+
+    /**
+     * @return the mnemonic packed by pack(), or -1 if it is longer than 5 characters
+     */
+    public int mnemonicCode() {
+        return pack(line, mnemonicStart, mnemonicEnd);
+    }
+
+    public String mnemonic() {
+        return line.subSequence(mnemonicStart, mnemonicEnd).toString();
+    }
+
+    public int operandCount() {
+        return operandCount;
+    }
+
+    public boolean isNumeric(int i) {
+        return operandNumeric[i];
+    }
+
+    /**
+     * @return the value of numeric operand i
+     */
+    public int value(int i) {
+        return operandValue[i];
+    }
+
+    public String operand(int i) {
+        return line.subSequence(operandStart[i], operandEnd[i]).toString();
+    }
+
+    /**
+     * Append operand i's text without making a String of it.
+     */
+    public void appendOperand(StringBuilder out, int i) {
+        out.append(line, operandStart[i], operandEnd[i]);
+    }
+
+    public void appendMnemonic(StringBuilder out) {
+        out.append(line, mnemonicStart, mnemonicEnd);
+    }
+
+    /**
+     * Pack up to 5 characters, letters, digits or '_', into an int: 6 bits per character, first character in the
+     * highest bits.
+     * @return the packed characters, or -1 for longer text or other characters
+     */
+    public static int pack(CharSequence text, int start, int end) {
+        if (end - start > 5 || end <= start) return -1;
+        int packed = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            int code;
+            if (c >= '0' && c <= '9') code = 1 + (c - '0');
+            else if (c >= 'A' && c <= 'Z') code = 11 + (c - 'A');
+            else if (c >= 'a' && c <= 'z') code = 37 + (c - 'a');
+            else if (c == '_') code = 63;
+            else return -1;
+            packed = (packed << 6) | code;
+        }
+        return packed;
+    }
+
+    public static int pack(String text) {
+        return pack(text, 0, text.length());
+    }
+
+    private void scanOperand(int i, int start, int end) {
+        operandStart[i] = start;
+        operandEnd[i] = end;
+        int pos = start;
+        boolean negative = false;
+        if (line.charAt(pos) == '-' || line.charAt(pos) == '+') {
+            negative = line.charAt(pos) == '-';
+            pos++;
+        }
+        // decimal digits only, like Integer.parseInt; anything else is a label reference
+        long value = 0;
+        boolean numeric = pos < end;
+        for (; pos < end && numeric; pos++) {
+            char ch = line.charAt(pos);
+            if (ch < '0' || ch > '9') {
+                numeric = false;
+            } else {
+                value = value * 10 + (ch - '0');
+                if (value > Integer.MAX_VALUE + 1L) numeric = false;
+            }
+        }
+        if (numeric && !negative && value > Integer.MAX_VALUE) numeric = false;
+        operandNumeric[i] = numeric;
+        operandValue[i] = numeric ? (int) (negative ? -value : value) : 0;
+    }
+
+    private int skipSpaces(int pos, int end) {
+        while (pos < end && Character.isWhitespace(line.charAt(pos))) pos++;
+        return pos;
+    }
+
+    private int trimEnd(int start, int end) {
+        while (end > start && Character.isWhitespace(line.charAt(end - 1))) end--;
+        return end;
+    }
+
+    private static boolean isSeparator(char ch) {
+        return ch == ',' || Character.isWhitespace(ch);
+    }
+}
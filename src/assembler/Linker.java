@@ -0,0 +1,216 @@
+package src.assembler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Links object modules into one program. Modules are laid out one after the other in the order given, the first
+ * at the base address (0 by default), so the main program goes first and keeps its LOC addresses. Each module's
+ * labels are relocated by its base address, and imported labels are resolved to the exporting module's address.
+ *
+ * Sources (anything but .obj files) are assembled to objects first, in parallel. A source whose object file was
+ * made from the same source text (see ObjectModule SOURCE) is not assembled again.
+ *
+ * Usage: java src.assembler.Linker [--threads n] [--obj dir] [--base n] [--listing file] [--load file]
+ *        [--image file] file...
+ */
+public class Linker {
+    // instruction address field
+    private static final int MAX_ADDRESS_OPERAND = 31;
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String objDir = null;
+        int base = 0;
+        String listingFile = "data/listing.txt";
+        String loadFile = "data/load.txt";
+        String imageFile = null;
+        List<String> files = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--obj": objDir = args[++i]; break;
+                case "--base": base = Integer.parseInt(args[++i]); break;
+                case "--listing": listingFile = args[++i]; break;
+                case "--load": loadFile = args[++i]; break;
+                case "--image": imageFile = args[++i]; break;
+                default: files.add(args[i]);
+            }
+        }
+        if (files.isEmpty() || threads < 1) {
+            System.err.println("Usage: java Linker [--threads n] [--obj dir] [--base n] [--listing file] " +
+                    "[--load file] [--image file] file...");
+            System.exit(1);
+        }
+
+        try {
+            List<ObjectModule> modules = build(files, objDir, threads);
+            AssemblyResult program = link(modules, base);
+            program.writeFiles(listingFile, loadFile, imageFile);
+            System.out.println("Linked " + modules.size() + " modules, " + program.size() + " words");
+            System.out.println("Listing file: " + listingFile);
+            System.out.println("Load file: " + loadFile);
+            if (imageFile != null) {
+                System.out.println("Image file: " + imageFile);
+            }
+        } catch (Exception e) {
+            System.err.println("Link failed: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Get an object module for each file: .obj files are read, sources are assembled on a pool of threads unless
+     * their object file is up to date.
+     * @param objDir directory for object files, or null to keep them next to each source
+     * @return modules in the order given
+     * @throws RuntimeException naming the file, if one fails to assemble
+     */
+    public static List<ObjectModule> build(List<String> files, String objDir, int threads)
+            throws IOException, InterruptedException {
+        if (objDir != null) {
+            Files.createDirectories(Paths.get(objDir));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<ObjectModule>> futures = new ArrayList<>();
+            for (String file : files) {
+                futures.add(pool.submit(() -> buildOne(file, objDir)));
+            }
+            List<ObjectModule> modules = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    modules.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(files.get(i) + ": " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+            return modules;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static ObjectModule buildOne(String file, String objDir) throws IOException {
+        if (file.endsWith(".obj")) {
+            return ObjectModule.read(file);
+        }
+        String objFile = objectFile(file, objDir);
+        if (new File(objFile).exists()) {
+            String hash = ObjectAssembler.hash(Files.readAllBytes(Paths.get(file)));
+            ObjectModule previous = ObjectModule.read(objFile);
+            if (previous.getSourceHash().equals(hash)) {
+                return previous;
+            }
+        }
+        ObjectModule module = new ObjectAssembler().assembleFile(file);
+        module.write(objFile);
+        System.out.println("Assembled " + file + " -> " + objFile);
+        return module;
+    }
+
+    private static String objectFile(String sourceFile, String objDir) {
+        File source = new File(sourceFile);
+        String name = source.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) name = name.substring(0, dot);
+        File dir = (objDir != null) ? new File(objDir) : source.getAbsoluteFile().getParentFile();
+        return new File(dir, name + ".obj").getPath();
+    }
+
+    /**
+     * Lay the modules out from base, and resolve every relocated and imported label.
+     * @return the program; its listing is the link map, one line per word under a header per module
+     * @throws RuntimeException on a duplicate export, an unresolved import, or a label address that doesn't fit
+     */
+    public static AssemblyResult link(List<ObjectModule> modules, int base) {
+        int[] bases = new int[modules.size()];
+        Map<String, Integer> symbols = new HashMap<>();
+        Map<String, String> exporters = new HashMap<>();
+        int next = base;
+        for (int m = 0; m < modules.size(); m++) {
+            ObjectModule module = modules.get(m);
+            bases[m] = next;
+            next += module.size();
+            for (Map.Entry<String, Integer> export : module.getExports().entrySet()) {
+                String previous = exporters.put(export.getKey(), module.getName());
+                if (previous != null) {
+                    throw new RuntimeException("Label " + export.getKey() + " is exported by both " + previous +
+                            " and " + module.getName());
+                }
+                symbols.put(export.getKey(), bases[m] + export.getValue());
+            }
+        }
+
+        List<String> listing = new ArrayList<>();
+        List<String> load = new ArrayList<>();
+        List<Integer> addresses = new ArrayList<>();
+        List<Short> words = new ArrayList<>();
+        int[] operands = new int[Lexer.MAX_OPERANDS];
+        for (int m = 0; m < modules.size(); m++) {
+            ObjectModule module = modules.get(m);
+            for (String label : module.getImports()) {
+                if (!symbols.containsKey(label)) {
+                    throw new RuntimeException(module.getName() + " imports " + label + ", which no module exports");
+                }
+            }
+            listing.add("; " + module.getName() + " at " + Encoder.convertToOctal(bases[m], 6) + ", " +
+                    module.size() + " words");
+
+            for (ObjectModule.Word word : module.getWords()) {
+                int address = bases[m] + word.offset;
+                int value = resolve(module, word, bases[m], symbols, operands);
+                StringBuilder line = new StringBuilder(13);
+                Assembler.appendOctal(line, address).append(' ');
+                Assembler.appendOctal(line, value);
+                load.add(line.toString());
+                listing.add(line.toString());
+                addresses.add(address);
+                words.add((short) value);
+            }
+        }
+
+        int[] addressArray = new int[addresses.size()];
+        short[] wordArray = new short[words.size()];
+        for (int i = 0; i < addressArray.length; i++) {
+            addressArray[i] = addresses.get(i);
+            wordArray[i] = words.get(i);
+        }
+        return new AssemblyResult(listing, load, addressArray, wordArray, symbols);
+    }
+
+    private static int resolve(ObjectModule module, ObjectModule.Word word, int base, Map<String, Integer> symbols,
+                               int[] operands) {
+        if (word.opcode == ObjectModule.ABSOLUTE) {
+            return word.values[0];
+        }
+        for (int i = 0; i < word.values.length; i++) {
+            if (word.imports[i] != null) {
+                operands[i] = symbols.get(word.imports[i]);
+            } else if (word.relocatable[i]) {
+                operands[i] = base + word.values[i];
+            } else {
+                operands[i] = word.values[i];
+                continue;
+            }
+            if (word.opcode != ObjectModule.DATA && operands[i] > MAX_ADDRESS_OPERAND) {
+                String label = word.imports[i] != null ? word.imports[i] : "label at +" + word.values[i];
+                throw new RuntimeException(module.getName() + " offset " + Encoder.convertToOctal(word.offset, 6) +
+                        ": " + label + " is at " + operands[i] + ", out of the instruction's address range; " +
+                        "reach it through an address constant (Data) instead");
+            }
+        }
+        if (word.opcode == ObjectModule.DATA) {
+            return operands[0];
+        }
+        return Encoder.encode(word.opcode, operands, word.values.length);
+    }
+}
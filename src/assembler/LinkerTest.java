@@ -0,0 +1,214 @@
+package src.assembler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class LinkerTest {
+
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    private static final String[] MAIN = {
+            "        IMPORT PRINT, MSG",
+            "        EXPORT START, COUNT",
+            "        LOC 6",
+            "COUNT:  Data 3",
+            "PRINTA: Data PRINT",
+            "MSGA:   Data MSG",
+            "SELF:   Data LOOP",
+            "        LOC 10",
+            "START:  LDR 0,0,COUNT",
+            "LOOP:   JMA 0,PRINTA,1",
+            "        HLT"};
+    private static final String[] LIB = {
+            "        IMPORT COUNT",
+            "        EXPORT PRINT, MSG",
+            "PRINT:  LDR 1,0,COUNT",
+            "        Data MSG",
+            "MSG:    Data 72"};
+
+    public static void main(String[] args) {
+        System.out.println("===  Linker Testing ===\n");
+
+        testRelocation();
+        testObjectFile();
+        testLibrary();
+        testLinkErrors();
+        testAssemblyErrors();
+
+        System.out.println("\n=== Test Results ===");
+        System.out.println("Tests Passed: " + testsPassed);
+        System.out.println("Tests Failed: " + testsFailed);
+        System.out.println("Total Tests: " + (testsPassed + testsFailed));
+
+        if (testsFailed == 0) {
+            System.out.println("*** ALL TESTS PASSED! ***");
+        } else {
+            System.out.println("*** " + testsFailed + " tests failed. ***");
+        }
+    }
+
+    private static void testRelocation() {
+        System.out.println("--- Testing Relocation and Imports ---");
+
+        ObjectModule main = module("MAIN", MAIN);
+        ObjectModule lib = module("LIB", LIB);
+        assertTrue(main.size() == 13, "module size runs up to its highest location (" + main.size() + ")");
+        assertTrue(main.getImports().equals(List.of("PRINT", "MSG")), "imports recorded");
+        assertTrue(lib.getExports().get("MSG") == 2, "exports recorded as module offsets");
+
+        // MAIN keeps its LOC addresses, LIB follows at 13
+        AssemblyResult result = Linker.link(List.of(main, lib), 0);
+        assertWordAt(result, 7, 13, "address constant of an imported label");
+        assertWordAt(result, 8, 15, "address constant of an imported label past the module start");
+        assertWordAt(result, 9, 11, "address constant of a local label");
+        assertWordAt(result, 10, Encoder.encodeWord("LDR 0,0,6"), "instruction with a local label");
+        assertWordAt(result, 11, Encoder.encodeWord("JMA 0,7,1"), "indirect jump through a local label");
+        assertWordAt(result, 13, Encoder.encodeWord("LDR 1,0,6"), "instruction with an imported label");
+        assertWordAt(result, 14, 15, "address constant relocated by the module base");
+        assertWordAt(result, 15, 72, "absolute data is not relocated");
+        assertTrue(result.getSymbols().get("START") == 10 && result.getSymbols().get("PRINT") == 13,
+                "exported labels in the symbol table");
+        assertTrue(result.getEntryPoint() == 10, "entry point at START");
+
+        // moving the whole program moves address constants; page zero operands stay in range
+        ObjectModule table = module("TABLE", "        Data 7", "        Data NEXT", "NEXT:   Data 0");
+        AssemblyResult moved = Linker.link(List.of(table), 100);
+        assertWordAt(moved, 101, 102, "module linked at a base of 100");
+    }
+
+    private static void testObjectFile() {
+        System.out.println("\n--- Testing Object Files ---");
+
+        try {
+            Path file = Files.createTempFile("linkertest", ".obj");
+            try {
+                ObjectModule lib = module("LIB", LIB);
+                lib.write(file.toString());
+                ObjectModule read = ObjectModule.read(file.toString());
+                assertTrue(read.getName().equals("LIB") && read.getSourceHash().equals("hash"),
+                        "name and source hash read back");
+                assertTrue(read.getExports().equals(lib.getExports()) && read.getImports().equals(lib.getImports()),
+                        "exports and imports read back");
+                List<String> direct = Linker.link(List.of(module("MAIN", MAIN), lib), 0).getLoadLines();
+                List<String> viaFile = Linker.link(List.of(module("MAIN", MAIN), read), 0).getLoadLines();
+                assertTrue(direct.equals(viaFile), "module read back links to the same words");
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            assertTrue(false, "object file round trip (" + e.getMessage() + ")");
+        }
+    }
+
+    private static void testLibrary() {
+        System.out.println("\n--- Testing the PRINTSTR Library ---");
+
+        try {
+            ObjectModule library = new ObjectAssembler().assembleFile("data/lib/printstr.txt");
+            ObjectModule main = module("MAIN",
+                    "        IMPORT PRINTSTR, PRINTLOOP, PRINTDONE",
+                    "        EXPORT TEMPX1, TEMPX2, TEMPX3, TEMP, PRINTLOOPADDR, PRINTDONEADDR",
+                    "        LOC 6",
+                    "TEMPX1: Data 0",
+                    "TEMPX2: Data 0",
+                    "TEMPX3: Data 0",
+                    "TEMP:   Data 0",
+                    "PRINTLOOPADDR: Data PRINTLOOP",
+                    "PRINTDONEADDR: Data PRINTDONE",
+                    "PRINTSTRADDR:  Data PRINTSTR",
+                    "        LOC 100",
+                    "START:  JSR 0,PRINTSTRADDR,1",
+                    "        HLT");
+            AssemblyResult result = Linker.link(List.of(main, library), 0);
+            int loop = result.getSymbols().get("PRINTLOOP");
+            int done = result.getSymbols().get("PRINTDONE");
+            assertTrue(result.getSymbols().get("PRINTSTR") == 102 && loop == 105, "library placed after MAIN");
+            assertWordAt(result, 10, loop, "PRINTLOOPADDR holds the relocated PRINTLOOP");
+            assertWordAt(result, 11, done, "PRINTDONEADDR holds the relocated PRINTDONE");
+            assertWordAt(result, loop + 1, Encoder.encodeWord("JZ 0,0,11,1"), "loop exit through PRINTDONEADDR");
+            assertWordAt(result, done - 1, Encoder.encodeWord("JMA 0,10,1"), "loop back through PRINTLOOPADDR");
+        } catch (IOException e) {
+            assertTrue(false, "data/lib/printstr.txt (" + e.getMessage() + ")");
+        }
+    }
+
+    private static void testLinkErrors() {
+        System.out.println("\n--- Testing Link Errors ---");
+
+        ObjectModule other = module("OTHER", "        EXPORT MSG", "MSG:    Data 0");
+        assertLinkError(List.of(module("MAIN", MAIN), module("LIB", LIB), other), 0,
+                "Label MSG is exported by both LIB and OTHER", "duplicate export");
+        assertLinkError(List.of(module("MAIN", MAIN)), 0,
+                "MAIN imports PRINT, which no module exports", "unresolved import");
+        assertLinkError(List.of(module("LOOPER", "LOOP:   JMA 0,LOOP")), 32,
+                "label at +0 is at 32, out of the instruction's address range", "local label out of range");
+        assertLinkError(List.of(module("MAIN", MAIN), module("LIB", LIB)), 30,
+                "label at +6 is at 36, out of the instruction's address range", "program linked above page zero");
+        ObjectModule far = module("FAR", "        EXPORT FARX", "        LOC 40", "FARX:   Data 0");
+        ObjectModule user = module("USER", "        IMPORT FARX", "        LDR 0,0,FARX");
+        assertLinkError(List.of(far, user), 0,
+                "FARX is at 40, out of the instruction's address range", "imported label out of range");
+    }
+
+    private static void testAssemblyErrors() {
+        System.out.println("\n--- Testing Module Assembly Errors ---");
+
+        assertAssemblyError("Label X is both defined and imported", "defined and imported",
+                "        IMPORT X",
+                "X:      Data 0");
+        assertAssemblyError("Exported label Y is not defined", "undefined export",
+                "        EXPORT Y",
+                "X:      Data 0");
+    }
+
+    private static ObjectModule module(String name, String... source) {
+        return new ObjectAssembler().assemble(name, Arrays.asList(source), "hash");
+    }
+
+    private static void assertWordAt(AssemblyResult result, int address, int expected, String description) {
+        for (int i = 0; i < result.size(); i++) {
+            if (result.getAddress(i) == address) {
+                int actual = result.getWord(i) & 0xFFFF;
+                assertTrue(actual == expected, description + String.format(" (at %06o expected %06o, actual %06o)",
+                        address, expected, actual));
+                return;
+            }
+        }
+        assertTrue(false, description + String.format(" (nothing at %06o)", address));
+    }
+
+    private static void assertLinkError(List<ObjectModule> modules, int base, String expected, String description) {
+        String message = null;
+        try {
+            Linker.link(new ArrayList<>(modules), base);
+        } catch (RuntimeException e) {
+            message = e.getMessage();
+        }
+        assertTrue(message != null && message.contains(expected), description + " (" + message + ")");
+    }
+
+    private static void assertAssemblyError(String expected, String description, String... source) {
+        String message = null;
+        try {
+            module("BAD", source);
+        } catch (RuntimeException e) {
+            message = e.getMessage();
+        }
+        assertTrue(message != null && message.contains(expected), description + " (" + message + ")");
+    }
+
+    private static void assertTrue(boolean passed, String description) {
+        if (passed) {
+            System.out.println("PASS: " + description);
+            testsPassed++;
+        } else {
+            System.out.println("FAIL: " + description);
+            testsFailed++;
+        }
+    }
+}
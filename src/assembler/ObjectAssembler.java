@@ -0,0 +1,234 @@
+package src.assembler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Assembles one source file into a relocatable ObjectModule, for Linker. The source is the same as for Assembler,
+ * plus two directives:
+ *   EXPORT label[, label...]   make labels of this module visible to other modules
+ *   IMPORT label[, label...]   use labels exported by another module
+ * Locations (LOC and labels) are offsets from the start of the module; the linker adds the module's base address.
+ * A module linked first keeps its LOC addresses, so page zero constants and tables stay where they are.
+ */
+public class ObjectAssembler {
+    private static final String EXPORT = "EXPORT";
+    private static final String IMPORT = "IMPORT";
+
+    private final Map<String, Integer> labels = new HashMap<>();
+    private final Map<String, Integer> exports = new LinkedHashMap<>();
+    private final Set<String> imports = new LinkedHashSet<>();
+    private final Lexer lexer = new Lexer();
+    private final int[] operands = new int[Lexer.MAX_OPERANDS];
+
+    /**
+     * Assembles a source file; the module is named after the file.
+     * @throws IOException if the file can't be read
+     * @throws RuntimeException on an assembly error
+     */
+    public ObjectModule assembleFile(String sourceFile) throws IOException {
+        byte[] source = Files.readAllBytes(Paths.get(sourceFile));
+        String name = Paths.get(sourceFile).getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) name = name.substring(0, dot);
+        List<String> lines = new String(source, StandardCharsets.UTF_8).lines().toList();
+        return assemble(name, lines, hash(source));
+    }
+
+    /**
+     * Assembles source lines into a module.
+     * @param sourceHash recorded in the module, so a build can tell whether the source changed since
+     * @throws RuntimeException on an assembly error
+     */
+    public ObjectModule assemble(String name, List<String> inputLines, String sourceHash) {
+        int size = buildLabels(inputLines);
+        for (String label : imports) {
+            if (labels.containsKey(label)) {
+                throw new RuntimeException("Label " + label + " is both defined and imported");
+            }
+        }
+        for (Map.Entry<String, Integer> export : exports.entrySet()) {
+            Integer offset = labels.get(export.getKey());
+            if (offset == null) {
+                throw new RuntimeException("Exported label " + export.getKey() + " is not defined");
+            }
+            export.setValue(offset);
+        }
+
+        List<ObjectModule.Word> words = new ArrayList<>();
+        int currentLoc = 0;
+        for (String line : inputLines) {
+            if (!lexer.tokenize(line)) continue;
+            int mnemonic = lexer.mnemonicCode();
+            if (mnemonic == Encoder.LOC_DIRECTIVE) {
+                currentLoc = lexer.value(0);
+            } else if (mnemonic == Encoder.DATA_DIRECTIVE) {
+                words.add(dataWord(line, currentLoc++));
+            } else if (!isLinkDirective()) {
+                words.add(instructionWord(line, currentLoc++));
+            }
+        }
+        return new ObjectModule(name, sourceHash, size, new LinkedHashMap<>(exports), new ArrayList<>(imports),
+                words);
+    }
+
+    /**
+     * First pass: label offsets, exports and imports.
+     * @return module size, up to its highest location
+     */
+    private int buildLabels(List<String> inputLines) {
+        labels.clear();
+        exports.clear();
+        imports.clear();
+        int currentLoc = 0;
+        int size = 0;
+
+        for (String line : inputLines) {
+            boolean statement = lexer.tokenize(line);
+            if (lexer.hasLabel() && labels.put(lexer.label(), currentLoc) != null) {
+                throw new RuntimeException("Duplicate label " + lexer.label() + ": " + line.trim());
+            }
+            if (!statement) continue;
+
+            if (lexer.mnemonicCode() == Encoder.LOC_DIRECTIVE) {
+                if (lexer.operandCount() < 1) {
+                    throw new RuntimeException("LOC directive requires a location: " + line.trim());
+                }
+                if (!lexer.isNumeric(0)) {
+                    throw new RuntimeException("Invalid location in LOC directive: " + line.trim());
+                }
+                currentLoc = lexer.value(0);
+            } else if (isLinkDirective()) {
+                for (int i = 0; i < lexer.operandCount(); i++) {
+                    if (lexer.mnemonic().equals(EXPORT)) {
+                        exports.put(lexer.operand(i), 0);
+                    } else {
+                        imports.add(lexer.operand(i));
+                    }
+                }
+            } else {
+                currentLoc++;
+                size = Math.max(size, currentLoc);
+            }
+        }
+        return size;
+    }
+
+    private boolean isLinkDirective() {
+        // longer than 5 characters, so not in the packed mnemonic table
+        if (lexer.mnemonicCode() != -1) return false;
+        String mnemonic = lexer.mnemonic();
+        return mnemonic.equals(EXPORT) || mnemonic.equals(IMPORT);
+    }
+
+    private ObjectModule.Word dataWord(String line, int offset) {
+        if (lexer.operandCount() < 1) {
+            throw new RuntimeException("Data directive requires a value: " + line.trim());
+        }
+        if (lexer.isNumeric(0)) {
+            return absolute(offset, lexer.value(0));
+        }
+        ObjectModule.Word word = symbolic(offset, ObjectModule.DATA, 1);
+        if (word == null) {
+            throw new RuntimeException("Undefined label in Data directive: " + lexer.operand(0) +
+                    " in line: " + line.trim());
+        }
+        return word;
+    }
+
+    private ObjectModule.Word instructionWord(String line, int offset) {
+        try {
+            int opcode = Encoder.opcodeOf(lexer.mnemonicCode());
+            if (opcode < 0) {
+                throw new RuntimeException("Unknown opcode: " + lexer.mnemonic());
+            }
+            int count = lexer.operandCount();
+            boolean symbolic = false;
+            for (int i = 0; i < count; i++) {
+                symbolic |= !lexer.isNumeric(i);
+                operands[i] = lexer.value(i);
+            }
+            // encode now even if a label makes it symbolic, to report bad instructions when assembling
+            int encoded = Encoder.encode(opcode, operands, count);
+            if (!symbolic) {
+                return absolute(offset, encoded);
+            }
+            ObjectModule.Word word = symbolic(offset, opcode, count);
+            if (word == null) {
+                throw new NumberFormatException("For input string: \"" + undefinedOperand(count) + "\"");
+            }
+            return word;
+        } catch (Exception e) {
+            throw new RuntimeException("Error encoding instruction at offset " +
+                    Encoder.convertToOctal(offset, 6) + ": " + line + " - " + e.getMessage());
+        }
+    }
+
+    private static ObjectModule.Word absolute(int offset, int value) {
+        return new ObjectModule.Word(offset, ObjectModule.ABSOLUTE, new int[] {value}, new boolean[1],
+                new String[1]);
+    }
+
+    /**
+     * @return a word whose label operands are relocated or imported, or null if a label is undefined
+     */
+    private ObjectModule.Word symbolic(int offset, int opcode, int count) {
+        int[] values = new int[count];
+        boolean[] relocatable = new boolean[count];
+        String[] imported = new String[count];
+        for (int i = 0; i < count; i++) {
+            if (lexer.isNumeric(i)) {
+                values[i] = lexer.value(i);
+                continue;
+            }
+            String name = lexer.operand(i);
+            Integer address = labels.get(name);
+            if (address != null) {
+                values[i] = address;
+                relocatable[i] = true;
+            } else if (imports.contains(name)) {
+                imported[i] = name;
+            } else {
+                return null;
+            }
+        }
+        return new ObjectModule.Word(offset, opcode, values, relocatable, imported);
+    }
+
+    private String undefinedOperand(int count) {
+        for (int i = 0; i < count; i++) {
+            if (!lexer.isNumeric(i) && !labels.containsKey(lexer.operand(i))
+                    && !imports.contains(lexer.operand(i))) {
+                return lexer.operand(i);
+            }
+        }
+        return "";
+    }
+
+    /**
+     * @return SHA-256 of the source, in hex
+     */
+    static String hash(byte[] source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
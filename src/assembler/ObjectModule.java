@@ -0,0 +1,203 @@
+package src.assembler;
+
+import src.simulator.FileIO;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A relocatable object module: words at offsets from the start of the module, the labels it exports and the
+ * labels it imports from other modules. Made by ObjectAssembler, placed and resolved by Linker.
+ *
+ * Object file format, one record per line (offsets and words in octal like the load file, operands in decimal):
+ *   MODULE name size
+ *   SOURCE hash                      hash of the source it was assembled from
+ *   EXPORT label offset
+ *   IMPORT label
+ *   W offset word                    absolute word
+ *   D offset operand                 Data directive referencing a label
+ *   I offset opcode operand...       instruction referencing a label
+ * where an operand is a number, +offset for a label of this module, or the name of an imported label.
+ */
+public class ObjectModule {
+    static final int ABSOLUTE = -2;
+    static final int DATA = -1;
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+");
+
+    /**
+     * One word of the module. Words without label references are ABSOLUTE, with the word in values[0].
+     */
+    static class Word {
+        final int offset;
+        final int opcode;       // ABSOLUTE, DATA or an instruction opcode
+        final int[] values;     // numbers, or label offsets in this module
+        final boolean[] relocatable;
+        final String[] imports; // imported label per operand, null if none
+
+        Word(int offset, int opcode, int[] values, boolean[] relocatable, String[] imports) {
+            this.offset = offset;
+            this.opcode = opcode;
+            this.values = values;
+            this.relocatable = relocatable;
+            this.imports = imports;
+        }
+    }
+
+    private final String name;
+    private final String sourceHash;
+    private final int size;
+    private final Map<String, Integer> exports;
+    private final List<String> imports;
+    private final List<Word> words;
+
+    ObjectModule(String name, String sourceHash, int size, Map<String, Integer> exports, List<String> imports,
+                 List<Word> words) {
+        this.name = name;
+        this.sourceHash = sourceHash;
+        this.size = size;
+        this.exports = exports;
+        this.imports = imports;
+        this.words = words;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSourceHash() {
+        return sourceHash;
+    }
+
+    /**
+     * @return number of words the module spans, from offset 0 to its last word
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return exported label to offset in the module
+     */
+    public Map<String, Integer> getExports() {
+        return exports;
+    }
+
+    public List<String> getImports() {
+        return imports;
+    }
+
+    List<Word> getWords() {
+        return words;
+    }
+
+    public void write(String fileName) throws IOException {
+        List<String> lines = new ArrayList<>(words.size() + exports.size() + imports.size() + 2);
+        lines.add("MODULE " + name + " " + size);
+        lines.add("SOURCE " + sourceHash);
+        for (Map.Entry<String, Integer> export : exports.entrySet()) {
+            lines.add("EXPORT " + export.getKey() + " " + Encoder.convertToOctal(export.getValue(), 6));
+        }
+        for (String label : imports) {
+            lines.add("IMPORT " + label);
+        }
+        for (Word word : words) {
+            StringBuilder line = new StringBuilder(32);
+            String offset = Encoder.convertToOctal(word.offset, 6);
+            if (word.opcode == ABSOLUTE) {
+                line.append("W ").append(offset).append(' ').append(Encoder.convertToOctal(word.values[0], 6));
+            } else {
+                line.append(word.opcode == DATA ? "D " : "I ").append(offset);
+                if (word.opcode != DATA) line.append(' ').append(word.opcode);
+                for (int i = 0; i < word.values.length; i++) {
+                    line.append(' ');
+                    if (word.imports[i] != null) {
+                        line.append(word.imports[i]);
+                    } else if (word.relocatable[i]) {
+                        line.append('+').append(word.values[i]);
+                    } else {
+                        line.append(word.values[i]);
+                    }
+                }
+            }
+            lines.add(line.toString());
+        }
+        FileIO.writeFile(fileName, lines);
+    }
+
+    /**
+     * @throws IOException if the file can't be read
+     * @throws RuntimeException if it is not a valid object file
+     */
+    public static ObjectModule read(String fileName) throws IOException {
+        List<String> lines = FileIO.readSourceFile(fileName);
+        String name = null;
+        String hash = "";
+        int size = 0;
+        Map<String, Integer> exports = new LinkedHashMap<>();
+        List<String> imports = new ArrayList<>();
+        List<Word> words = new ArrayList<>();
+
+        for (int n = 0; n < lines.size(); n++) {
+            String[] fields = lines.get(n).trim().split("\\s+");
+            try {
+                switch (fields[0]) {
+                    case "MODULE":
+                        name = fields[1];
+                        size = Integer.parseInt(fields[2]);
+                        break;
+                    case "SOURCE":
+                        hash = fields[1];
+                        break;
+                    case "EXPORT":
+                        exports.put(fields[1], Integer.parseInt(fields[2], 8));
+                        break;
+                    case "IMPORT":
+                        imports.add(fields[1]);
+                        break;
+                    case "W":
+                        words.add(new Word(Integer.parseInt(fields[1], 8), ABSOLUTE,
+                                new int[] {Integer.parseUnsignedInt(fields[2], 8)}, new boolean[1], new String[1]));
+                        break;
+                    case "D":
+                    case "I":
+                        words.add(parseWord(fields));
+                        break;
+                    default:
+                        if (!fields[0].isEmpty()) throw new RuntimeException("Unknown record " + fields[0]);
+                }
+            } catch (RuntimeException e) {
+                throw new RuntimeException(fileName + " line " + (n + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        if (name == null) {
+            throw new RuntimeException(fileName + ": not an object module");
+        }
+        return new ObjectModule(name, hash, size, exports, imports, words);
+    }
+
+    private static Word parseWord(String[] fields) {
+        boolean data = fields[0].equals("D");
+        int first = data ? 2 : 3;
+        int count = fields.length - first;
+        int[] values = new int[count];
+        boolean[] relocatable = new boolean[count];
+        String[] imports = new String[count];
+        for (int i = 0; i < count; i++) {
+            String operand = fields[first + i];
+            if (operand.charAt(0) == '+') {
+                relocatable[i] = true;
+                values[i] = Integer.parseInt(operand.substring(1));
+            } else if (NUMBER.matcher(operand).matches()) {
+                values[i] = Integer.parseInt(operand);
+            } else {
+                imports[i] = operand;
+            }
+        }
+        return new Word(Integer.parseInt(fields[1], 8), data ? DATA : Integer.parseInt(fields[2]), values,
+                relocatable, imports);
+    }
+}
@@ -0,0 +1,195 @@
+package src.assembler;
+
+import java.util.Arrays;
+
+/**
+ * The instruction set: every instruction's mnemonic, opcode, operand format and cycle cost, in one table. The
+ * Encoder packs operands with it, and the simulator decodes, dispatches and counts cycles with it, so a new
+ * instruction is added here (plus its case in Computer.executeInstruction).
+ *
+ * Word layout: opcode in bits 15-10, the rest as given by the format's fields.
+ */
+public enum Opcode {
+    HLT(0, Format.NONE, 1),
+    LDR(1, Format.LOAD_STORE, 2),
+    STR(2, Format.LOAD_STORE, 2),
+    LDA(3, Format.LOAD_STORE, 1),
+    AMR(4, Format.LOAD_STORE, 2),
+    SMR(5, Format.LOAD_STORE, 2),
+    AIR(6, Format.IMMEDIATE, 1),
+    SIR(7, Format.IMMEDIATE, 1),
+    JZ(8, Format.LOAD_STORE, 1),
+    JNE(9, Format.LOAD_STORE, 1),
+    JCC(10, Format.LOAD_STORE, 1),
+    JMA(11, Format.TRANSFER, 1),
+    JSR(12, Format.TRANSFER, 2),
+    RFS(13, Format.RETURN, 2),
+    SOB(14, Format.LOAD_STORE, 1),
+    JGE(15, Format.LOAD_STORE, 1),
+    TRAP(24, Format.TRAP, 3),
+    SRC(25, Format.SHIFT, 1),
+    RRC(26, Format.SHIFT, 1),
+    FADD(27, Format.LOAD_STORE, 4),
+    FSUB(28, Format.LOAD_STORE, 4),
+    VADD(29, Format.LOAD_STORE, 4), // plus a cycle per element
+    VSUB(30, Format.LOAD_STORE, 4),
+    CNVRT(31, Format.LOAD_STORE, 4),
+    LDX(33, Format.INDEX, 2),
+    STX(34, Format.INDEX, 2),
+    LDFR(40, Format.LOAD_STORE, 2),
+    STFR(41, Format.LOAD_STORE, 2),
+    IN(49, Format.IO, 4),
+    OUT(50, Format.IO, 4),
+    CHK(51, Format.IO, 4),
+    MLT(56, Format.REGISTER_PAIR, 4),
+    DVD(57, Format.REGISTER_PAIR, 8),
+    TRR(58, Format.REGISTER_PAIR, 1),
+    AND(59, Format.REGISTER_PAIR, 1),
+    ORR(60, Format.REGISTER_PAIR, 1),
+    NOT(61, Format.REGISTER, 1);
+
+    /**
+     * A bit field of the instruction word.
+     */
+    public enum Field {
+        R(8, 2),
+        IX(6, 2),
+        I(5, 1),
+        ADDRESS(0, 5),
+        IMMEDIATE(0, 5),
+        RX(8, 2),
+        RY(6, 2),
+        AL(7, 1),
+        LR(6, 1),
+        COUNT(0, 4),
+        TRAP_CODE(0, 4),
+        DEVICE(0, 5);
+
+        public final int shift;
+        public final int mask;
+
+        Field(int shift, int width) {
+            this.shift = shift;
+            this.mask = (1 << width) - 1;
+        }
+
+        public int extract(int word) {
+            return (word >> shift) & mask;
+        }
+
+        int insert(int value) {
+            // the indirect bit is set by an operand of exactly 1
+            if (this == I) value = (value == 1) ? 1 : 0;
+            return (value & mask) << shift;
+        }
+    }
+
+    /**
+     * Operand format: the fields the source operands go into, in source order. Operands after the first
+     * `required` ones may be left out, and are then 0.
+     */
+    public enum Format {
+        NONE(0, true),
+        LOAD_STORE(3, true, Field.R, Field.IX, Field.ADDRESS, Field.I),
+        TRANSFER(2, true, Field.IX, Field.ADDRESS, Field.I),
+        INDEX(2, false, Field.IX, Field.ADDRESS, Field.I),  // IX names the register to load or store
+        RETURN(0, true, Field.IMMEDIATE),
+        IMMEDIATE(2, true, Field.R, Field.IMMEDIATE),
+        REGISTER_PAIR(2, true, Field.RX, Field.RY),
+        REGISTER(1, true, Field.RX),
+        SHIFT(4, true, Field.R, Field.COUNT, Field.LR, Field.AL),
+        IO(2, true, Field.R, Field.DEVICE),
+        TRAP(1, true, Field.TRAP_CODE);
+
+        public final int required;
+        public final boolean indexed; // the IX field indexes the address
+        private final Field[] operands;
+
+        Format(int required, boolean indexed, Field... operands) {
+            this.required = required;
+            this.indexed = indexed;
+            this.operands = operands;
+        }
+
+        public int operandCount() {
+            return operands.length;
+        }
+
+        public Field operand(int i) {
+            return operands[i];
+        }
+    }
+
+    public static final int OPCODE_SHIFT = 10;
+    public static final int OPCODE_COUNT = 64;
+
+    private static final Opcode[] BY_CODE = new Opcode[OPCODE_COUNT];
+    private static final int[] CYCLES = new int[OPCODE_COUNT];
+    static {
+        Arrays.fill(CYCLES, 1);
+        for (Opcode op : values()) {
+            BY_CODE[op.code] = op;
+            CYCLES[op.code] = op.cycles;
+        }
+    }
+
+    public final int code;
+    public final Format format;
+    public final int cycles; // simulated cycles, one more with indirect addressing
+
+    Opcode(int code, Format format, int cycles) {
+        this.code = code;
+        this.format = format;
+        this.cycles = cycles;
+    }
+
+    /**
+     * @return the instruction with this opcode, or null if there is none
+     */
+    public static Opcode of(int code) {
+        return (code >= 0 && code < OPCODE_COUNT) ? BY_CODE[code] : null;
+    }
+
+    /**
+     * @return the opcode of an instruction word
+     */
+    public static int codeOf(int word) {
+        return (word >> OPCODE_SHIFT) & (OPCODE_COUNT - 1);
+    }
+
+    /**
+     * @return cycle cost by opcode, 1 for unused opcodes
+     */
+    public static int cycles(int code) {
+        return CYCLES[code];
+    }
+
+    /**
+     * Pack operands, in source order, into an instruction word.
+     * @throws IllegalArgumentException if a required operand is missing
+     */
+    public int encode(int[] operands, int count) {
+        int word = code << OPCODE_SHIFT;
+        for (int i = 0; i < format.operands.length; i++) {
+            if (i >= count) {
+                if (i < format.required) {
+                    throw new IllegalArgumentException("Missing operand " + (i + 1));
+                }
+                break;
+            }
+            word |= format.operands[i].insert(operands[i]);
+        }
+        return word;
+    }
+
+    /**
+     * Unpack an instruction word's operands, in source order.
+     * @return number of operands written to operands
+     */
+    public int decode(int word, int[] operands) {
+        for (int i = 0; i < format.operands.length; i++) {
+            operands[i] = format.operands[i].extract(word);
+        }
+        return format.operands.length;
+    }
+}
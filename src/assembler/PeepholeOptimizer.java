@@ -0,0 +1,482 @@
+package src.assembler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Optional source-to-source optimization pass, run before assembly (Assembler --optimize). Rules, applied until
+ * nothing changes:
+ *  - STR then LDR of the same register and address: the LDR is dropped
+ *  - chains of AIR/SIR on one register are folded into one instruction
+ *  - LDR/AMR/SMR r, 0, C of a constant C (0-31) become LDA r, 0, value / AIR r, value / SIR r, value
+ *  - a jump (IX 0) to an unconditional JMA is sent straight to that JMA's target
+ *  - instructions after JMA, RFS or HLT are dropped, up to the next label, LOC or Data
+ *
+ * A constant is a labelled Data word with a numeric value that no STR/STX stores to, by label or by address,
+ * directly or through a pointer. A store through a pointer whose target can't be told, or a VADD/VSUB (which
+ * writes a vector wherever its address words point), turns constants off.
+ * Stores through an index register can't be checked, and removing instructions moves the code after them, so
+ * the pass assumes code is reached through labels and that constants are only written by name. Only instructions
+ * without a label are removed. Changed lines keep their label and comment, and are marked "; opt:" with the
+ * original statement.
+ */
+public class PeepholeOptimizer {
+    private static final int LDR = Opcode.LDR.code;
+    private static final int STR = Opcode.STR.code;
+    private static final int STX = Opcode.STX.code;
+    private static final int STFR = Opcode.STFR.code;
+    private static final int VADD = Opcode.VADD.code;
+    private static final int VSUB = Opcode.VSUB.code;
+    private static final int AMR = Opcode.AMR.code;
+    private static final int SMR = Opcode.SMR.code;
+    private static final int AIR = Opcode.AIR.code;
+    private static final int SIR = Opcode.SIR.code;
+    private static final int JZ = Opcode.JZ.code;
+    private static final int JNE = Opcode.JNE.code;
+    private static final int JCC = Opcode.JCC.code;
+    private static final int JMA = Opcode.JMA.code;
+    private static final int JSR = Opcode.JSR.code;
+    private static final int RFS = Opcode.RFS.code;
+    private static final int SOB = Opcode.SOB.code;
+    private static final int JGE = Opcode.JGE.code;
+    private static final int HLT = Opcode.HLT.code;
+
+    private static final int MAX_IMMEDIATE = 31;
+    private static final int MAX_PASSES = 10;
+    private static final int MAX_JUMP_HOPS = 8;
+
+    private static final int LOC = -2;
+    private static final int DATA = -3;
+    private static final int OTHER = -4;
+
+    /**
+     * One statement of the source.
+     */
+    private static class Statement {
+        final int line;
+        final String indent;
+        final String lineLabel;   // label written on the statement's own line, or null
+        final boolean labelled;   // by its own line or label-only lines just before it
+        int kind;                 // opcode, LOC, DATA or OTHER
+        final String comment;
+        String mnemonic;
+        String[] operands;
+        final String original;    // statement as first parsed, without label and comment
+        boolean removed;
+        boolean changed;
+
+        Statement(int line, String source, Lexer lexer, boolean labelledBefore) {
+            this.line = line;
+            int start = 0;
+            while (start < source.length() && Character.isWhitespace(source.charAt(start))) start++;
+            indent = source.substring(0, start);
+            int semicolon = source.indexOf(';');
+            comment = semicolon >= 0 ? source.substring(semicolon).trim() : "";
+            lineLabel = lexer.hasLabel() ? lexer.label() : null;
+            labelled = labelledBefore || lineLabel != null;
+            mnemonic = lexer.mnemonic();
+            int code = lexer.mnemonicCode();
+            kind = code == Encoder.LOC_DIRECTIVE ? LOC
+                    : code == Encoder.DATA_DIRECTIVE ? DATA
+                    : Encoder.opcodeOf(code) >= 0 ? Encoder.opcodeOf(code) : OTHER;
+            operands = new String[lexer.operandCount()];
+            for (int i = 0; i < operands.length; i++) {
+                operands[i] = lexer.operand(i);
+            }
+            original = text();
+        }
+
+        String operand(int i) {
+            // missing trailing operands (e.g. the indirect bit) are 0
+            return i < operands.length ? operands[i] : "0";
+        }
+
+        String text() {
+            return mnemonic + (operands.length == 0 ? "" : " " + String.join(", ", operands));
+        }
+    }
+
+    /**
+     * One change, for the report.
+     */
+    public static class Change {
+        public final int line;     // 1-based source line
+        public final String rule;
+        public final String before;
+        public final String after; // null if removed
+
+        Change(int line, String rule, String before, String after) {
+            this.line = line;
+            this.rule = rule;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    private final Lexer lexer = new Lexer();
+    private final List<Statement> statements = new ArrayList<>();
+    private final Map<String, Statement> labelTargets = new HashMap<>();
+    private final Map<String, Integer> constants = new HashMap<>();
+    private final Map<String, String> addressConstants = new HashMap<>();
+    private final List<Change> changes = new ArrayList<>();
+
+    /**
+     * Optimize a program's source.
+     * @return the optimized source, line for line (removed statements become comments)
+     */
+    public List<String> optimize(List<String> source) {
+        parse(source);
+        findConstants();
+
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            int before = changes.size();
+            dropReloads();
+            foldImmediates();
+            loadConstants();
+            threadJumps();
+            dropUnreachable();
+            if (changes.size() == before) break;
+        }
+
+        List<String> output = new ArrayList<>(source);
+        for (Statement statement : statements) {
+            if (statement.removed) {
+                output.set(statement.line, statement.indent + "; opt: removed " + statement.original);
+            } else if (statement.changed) {
+                String label = statement.lineLabel != null ? statement.lineLabel + ": " : "";
+                String comment = statement.comment.isEmpty() ? "" : " " + statement.comment;
+                output.set(statement.line, statement.indent + label + statement.text() +
+                        "    ; opt: " + statement.original + comment);
+            }
+        }
+        return output;
+    }
+
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    /**
+     * @return the changes, one per line, then a count per rule
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        Map<String, Integer> perRule = new LinkedHashMap<>();
+        int removed = 0;
+        for (Change change : changes) {
+            report.append(String.format("  line %4d  %-14s %-24s -> %s%n", change.line, change.rule, change.before,
+                    change.after == null ? "(removed)" : change.after));
+            perRule.merge(change.rule, 1, Integer::sum);
+            if (change.after == null) removed++;
+        }
+        report.insert(0, "Peephole optimizer: " + changes.size() + " changes, " + removed + " words saved" +
+                System.lineSeparator());
+        perRule.forEach((rule, count) -> report.append("  ").append(rule).append(": ").append(count)
+                .append(System.lineSeparator()));
+        return report.toString();
+    }
+
+    private void parse(List<String> source) {
+        statements.clear();
+        labelTargets.clear();
+        changes.clear();
+        List<String> pendingLabels = new ArrayList<>();
+        for (int i = 0; i < source.size(); i++) {
+            boolean statement = lexer.tokenize(source.get(i));
+            if (lexer.hasLabel()) {
+                pendingLabels.add(lexer.label());
+            }
+            if (!statement) continue;
+            Statement s = new Statement(i, source.get(i), lexer, pendingLabels.size() > (lexer.hasLabel() ? 1 : 0));
+            for (String label : pendingLabels) {
+                labelTargets.put(label, s);
+            }
+            pendingLabels.clear();
+            statements.add(s);
+        }
+    }
+
+    /**
+     * Find labelled Data words that are never stored to: numeric constants and address constants.
+     */
+    private void findConstants() {
+        constants.clear();
+        addressConstants.clear();
+
+        // labels by address, to match stores to numeric addresses
+        Map<Integer, List<String>> labelsAt = new HashMap<>();
+        Map<Statement, Integer> addresses = new HashMap<>();
+        int location = 0;
+        for (Statement s : statements) {
+            if (s.kind == LOC) {
+                Integer value = number(s.operand(0));
+                location = value != null ? value : location;
+                continue;
+            }
+            if (s.kind == OTHER) continue;
+            addresses.put(s, location++);
+        }
+        for (Map.Entry<String, Statement> target : labelTargets.entrySet()) {
+            Integer address = addresses.get(target.getValue());
+            if (address != null) {
+                labelsAt.computeIfAbsent(address, a -> new ArrayList<>()).add(target.getKey());
+            }
+        }
+
+        Set<String> stored = new HashSet<>();
+        List<String> pointers = new ArrayList<>();
+        boolean unknownStore = false;
+        for (Statement s : statements) {
+            if (s.kind == VADD || s.kind == VSUB) {
+                unknownStore = true;
+                continue;
+            }
+            int addressOperand = (s.kind == STR || s.kind == STFR) ? 2 : s.kind == STX ? 1 : -1;
+            if (addressOperand < 0) continue;
+            String ix = addressOperand == 2 ? s.operand(1) : "0";
+            if (!ix.equals("0")) continue;
+            String address = s.operand(addressOperand);
+            Integer numeric = number(address);
+            if (numeric != null) {
+                stored.addAll(labelsAt.getOrDefault(numeric, List.of()));
+            } else {
+                stored.add(address);
+            }
+            if (s.operand(addressOperand + 1).equals("1")) {
+                // through a pointer: its target is written too
+                Statement pointer = numeric != null ? statementAt(labelsAt, numeric) : labelTargets.get(address);
+                if (pointer == null || pointer.kind != DATA || pointer.operands.length < 1) {
+                    unknownStore = true;
+                    continue;
+                }
+                String target = pointer.operand(0);
+                Integer targetAddress = number(target);
+                if (targetAddress != null) {
+                    stored.addAll(labelsAt.getOrDefault(targetAddress, List.of()));
+                } else {
+                    stored.add(target);
+                }
+                pointers.addAll(labelsAt.getOrDefault(addresses.get(pointer), List.of()));
+            }
+        }
+        // a pointer that is itself stored to may point anywhere
+        for (String pointer : pointers) {
+            if (stored.contains(pointer)) unknownStore = true;
+        }
+        if (unknownStore) return;
+
+        for (Map.Entry<String, Statement> target : labelTargets.entrySet()) {
+            Statement s = target.getValue();
+            if (s.kind != DATA || s.operands.length < 1 || stored.contains(target.getKey())) continue;
+            Integer value = number(s.operand(0));
+            if (value != null) {
+                constants.put(target.getKey(), value);
+            } else {
+                addressConstants.put(target.getKey(), s.operand(0));
+            }
+        }
+    }
+
+    /**
+     * STR r, x, A then LDR r, x, A: the register already holds the value.
+     */
+    private void dropReloads() {
+        Statement previous = null;
+        for (Statement s : statements) {
+            if (s.removed) continue;
+            if (previous != null && previous.kind == STR && s.kind == LDR && !s.labelled
+                    && sameOperands(previous, s, 4)) {
+                remove(s, "store/reload");
+                continue;
+            }
+            previous = s;
+        }
+    }
+
+    /**
+     * AIR r, a; SIR r, b; AIR r, c becomes AIR r, a - b + c (or SIR for a negative sum).
+     */
+    private void foldImmediates() {
+        for (int i = 0; i < statements.size(); i++) {
+            Statement first = statements.get(i);
+            if (first.removed || !isImmediate(first)) continue;
+            String register = first.operand(0);
+            int sum = signedImmediate(first);
+            List<Statement> chain = new ArrayList<>();
+            for (int j = i + 1; j < statements.size(); j++) {
+                Statement s = statements.get(j);
+                if (s.removed) continue;
+                if (s.labelled || !isImmediate(s) || !s.operand(0).equals(register)) break;
+                if (Math.abs(sum + signedImmediate(s)) > MAX_IMMEDIATE) break;
+                sum += signedImmediate(s);
+                chain.add(s);
+            }
+            if (chain.isEmpty()) continue;
+
+            for (Statement s : chain) {
+                remove(s, "fold AIR/SIR");
+            }
+            if (sum == 0 && !first.labelled) {
+                remove(first, "fold AIR/SIR");
+            } else {
+                replace(first, "fold AIR/SIR", sum >= 0 ? "AIR" : "SIR",
+                        new String[] {register, String.valueOf(Math.abs(sum))});
+            }
+        }
+    }
+
+    /**
+     * LDR/AMR/SMR r, 0, C of a small constant C become LDA r, 0, value / AIR r, value / SIR r, value.
+     */
+    private void loadConstants() {
+        for (Statement s : statements) {
+            if (s.removed || (s.kind != LDR && s.kind != AMR && s.kind != SMR)) continue;
+            if (!s.operand(1).equals("0") || !s.operand(3).equals("0")) continue;
+            Integer value = constants.get(s.operand(2));
+            if (value == null || value < 0 || value > MAX_IMMEDIATE) continue;
+            String register = s.operand(0);
+            if (s.kind == LDR) {
+                replace(s, "constant load", "LDA", new String[] {register, "0", String.valueOf(value)});
+            } else {
+                replace(s, "constant load", s.kind == AMR ? "AIR" : "SIR",
+                        new String[] {register, String.valueOf(value)});
+            }
+        }
+    }
+
+    /**
+     * A jump to a JMA goes straight to the JMA's target.
+     */
+    private void threadJumps() {
+        for (Statement s : statements) {
+            if (s.removed) continue;
+            int addressOperand = jumpAddressOperand(s);
+            if (addressOperand < 0) continue;
+
+            String address = s.operand(addressOperand);
+            String indirect = s.operand(addressOperand + 1);
+            boolean threaded = false;
+            for (int hop = 0; hop < MAX_JUMP_HOPS; hop++) {
+                Statement target = jumpTarget(address, indirect);
+                if (target == null || target == s || target.removed || target.kind != JMA
+                        || !target.operand(0).equals("0")) break;
+                String nextAddress = target.operand(1);
+                String nextIndirect = target.operand(2);
+                if (number(nextAddress) != null || jumpTarget(nextAddress, nextIndirect) == target) break;
+                address = nextAddress;
+                indirect = nextIndirect;
+                threaded = true;
+            }
+            if (!threaded || (address.equals(s.operand(addressOperand))
+                    && indirect.equals(s.operand(addressOperand + 1)))) continue;
+
+            String[] operands = Arrays.copyOf(s.operands, Math.max(s.operands.length, addressOperand + 2));
+            operands[addressOperand] = address;
+            operands[addressOperand + 1] = indirect;
+            if (indirect.equals("0")) {
+                operands = Arrays.copyOf(operands, addressOperand + 1);
+            }
+            replace(s, "jump to jump", s.mnemonic, operands);
+        }
+    }
+
+    /**
+     * Instructions after JMA, RFS or HLT can't be reached unless they have a label.
+     */
+    private void dropUnreachable() {
+        boolean reachable = true;
+        for (Statement s : statements) {
+            if (s.removed) continue;
+            if (s.labelled || s.kind < 0) {
+                reachable = true;
+            } else if (!reachable) {
+                remove(s, "unreachable");
+                continue;
+            }
+            if (s.kind == JMA || s.kind == RFS || s.kind == HLT) {
+                reachable = false;
+            }
+        }
+    }
+
+    /**
+     * @return the index of the address operand of a jump with IX 0 and a label address, or -1
+     */
+    private static int jumpAddressOperand(Statement s) {
+        int addressOperand;
+        if (s.kind == JMA || s.kind == JSR) {
+            addressOperand = 1;
+        } else if (s.kind == JZ || s.kind == JNE || s.kind == JCC || s.kind == SOB || s.kind == JGE) {
+            addressOperand = 2;
+        } else {
+            return -1;
+        }
+        if (!s.operand(addressOperand - 1).equals("0") || number(s.operand(addressOperand)) != null) return -1;
+        return addressOperand;
+    }
+
+    /**
+     * @return the statement a jump to address (through an address constant if indirect) lands on, or null
+     */
+    private Statement jumpTarget(String address, String indirect) {
+        if (indirect.equals("1")) {
+            address = addressConstants.get(address);
+            if (address == null) return null;
+        } else if (!indirect.equals("0")) {
+            return null;
+        }
+        return labelTargets.get(address);
+    }
+
+    /**
+     * @return the statement assembled at address, found through its labels, or null
+     */
+    private Statement statementAt(Map<Integer, List<String>> labelsAt, int address) {
+        List<String> labels = labelsAt.get(address);
+        return labels == null ? null : labelTargets.get(labels.get(0));
+    }
+
+    private static boolean isImmediate(Statement s) {
+        return (s.kind == AIR || s.kind == SIR) && number(s.operand(1)) != null;
+    }
+
+    private static int signedImmediate(Statement s) {
+        int value = number(s.operand(1));
+        return s.kind == AIR ? value : -value;
+    }
+
+    private static boolean sameOperands(Statement a, Statement b, int count) {
+        for (int i = 0; i < count; i++) {
+            if (!a.operand(i).equals(b.operand(i))) return false;
+        }
+        return true;
+    }
+
+    private void remove(Statement s, String rule) {
+        s.removed = true;
+        changes.add(new Change(s.line + 1, rule, s.text(), null));
+    }
+
+    private void replace(Statement s, String rule, String mnemonic, String[] operands) {
+        String before = s.text();
+        s.mnemonic = mnemonic;
+        s.kind = Opcode.valueOf(mnemonic).code;
+        s.operands = operands;
+        s.changed = true;
+        changes.add(new Change(s.line + 1, rule, before, s.text()));
+    }
+
+    private static Integer number(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package src.assembler;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class PeepholeOptimizerTest {
+
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) {
+        System.out.println("===  Peephole Optimizer Testing ===\n");
+
+        testStoreReload();
+        testFoldImmediates();
+        testConstantLoads();
+        testStoredConstants();
+        testJumpToJump();
+        testUnreachable();
+
+        System.out.println("\n=== Test Results ===");
+        System.out.println("Tests Passed: " + testsPassed);
+        System.out.println("Tests Failed: " + testsFailed);
+        System.out.println("Total Tests: " + (testsPassed + testsFailed));
+
+        if (testsFailed == 0) {
+            System.out.println("*** ALL TESTS PASSED! ***");
+        } else {
+            System.out.println("*** " + testsFailed + " tests failed. ***");
+        }
+    }
+
+    private static void testStoreReload() {
+        System.out.println("--- Testing Store/Reload ---");
+
+        List<String> output = optimize(
+                "        LOC 6",
+                "X:      Data 0",
+                "        LOC 100",
+                "START:  STR 0, 0, X",
+                "        LDR 0, 0, X",
+                "        LDR 1, 0, X",
+                "        HLT");
+        assertLine(output, 4, "(removed)", "LDR of the register just stored is dropped");
+        assertLine(output, 5, "LDR 1, 0, X", "LDR into another register is kept");
+    }
+
+    private static void testFoldImmediates() {
+        System.out.println("\n--- Testing AIR/SIR Folding ---");
+
+        List<String> output = optimize(
+                "START:  AIR 0, 20",
+                "        AIR 0, 10",
+                "        SIR 0, 2",
+                "        AIR 1, 3",
+                "        SIR 1, 3",
+                "        HLT");
+        assertLine(output, 0, "AIR 0, 28", "AIR/AIR/SIR chain folded into the first");
+        assertLine(output, 1, "(removed)", "second of the chain removed");
+        assertLine(output, 2, "(removed)", "third of the chain removed");
+        assertLine(output, 3, "(removed)", "AIR/SIR summing to 0 removed");
+        assertLine(output, 4, "(removed)", "AIR/SIR summing to 0 removed");
+    }
+
+    private static void testConstantLoads() {
+        System.out.println("\n--- Testing Constant Loads ---");
+
+        List<String> output = optimize(
+                "        LOC 6",
+                "FIVE:   Data 5",
+                "BIG:    Data 100",
+                "        LOC 100",
+                "START:  LDR 1, 0, FIVE",
+                "        AMR 2, 0, FIVE",
+                "        SMR 3, 0, FIVE",
+                "        LDR 2, 0, BIG",
+                "        LDR 2, 1, FIVE",
+                "        HLT");
+        assertLine(output, 4, "LDA 1, 0, 5", "LDR of a constant");
+        assertLine(output, 5, "AIR 2, 5", "AMR of a constant");
+        assertLine(output, 6, "SIR 3, 5", "SMR of a constant");
+        assertLine(output, 7, "LDR 2, 0, BIG", "constant too big for an immediate is kept");
+        assertLine(output, 8, "LDR 2, 1, FIVE", "indexed load is kept");
+    }
+
+    private static void testStoredConstants() {
+        System.out.println("\n--- Testing Stores to Constants ---");
+
+        assertLine(optimize(
+                "        LOC 6",
+                "FIVE:   Data 5",
+                "        LOC 100",
+                "START:  STR 0, 0, FIVE",
+                "        LDR 1, 0, FIVE",
+                "        HLT"), 4, "LDR 1, 0, FIVE", "stored by label");
+        assertLine(optimize(
+                "        LOC 6",
+                "FIVE:   Data 5",
+                "        LOC 100",
+                "START:  STR 0, 0, 6",
+                "        LDR 1, 0, FIVE",
+                "        HLT"), 4, "LDR 1, 0, FIVE", "stored by numeric address");
+        assertLine(optimize(
+                "        LOC 6",
+                "PTR:    Data FIVE",
+                "FIVE:   Data 5",
+                "        LOC 100",
+                "START:  STR 0, 0, PTR, 1",
+                "        LDR 1, 0, FIVE",
+                "        HLT"), 5, "LDR 1, 0, FIVE", "stored through a pointer holding a label");
+        assertLine(optimize(
+                "        LOC 6",
+                "PTR:    Data 20",
+                "        LOC 20",
+                "K:      Data 5",
+                "        LOC 100",
+                "START:  STR 0, 0, PTR, 1",
+                "        LDR 1, 0, K",
+                "        HLT"), 6, "LDR 1, 0, K", "stored through a pointer holding a number");
+        assertLine(optimize(
+                "        LOC 6",
+                "PTR:    Data 20",
+                "        LOC 20",
+                "K:      Data 5",
+                "        LOC 100",
+                "START:  STR 0, 0, 6, 1",
+                "        LDR 1, 0, K",
+                "        HLT"), 6, "LDR 1, 0, K", "stored through a pointer at a numeric address");
+        assertLine(optimize(
+                "        LOC 6",
+                "PTR:    Data FIVE",
+                "FIVE:   Data 5",
+                "SIX:    Data 6",
+                "        LOC 100",
+                "START:  STR 0, 0, PTR",
+                "        STR 0, 0, PTR, 1",
+                "        LDR 1, 0, SIX",
+                "        HLT"), 7, "LDR 1, 0, SIX", "pointer that is itself stored to turns constants off");
+        assertLine(optimize(
+                "        LOC 6",
+                "SIX:    Data 6",
+                "        LOC 100",
+                "START:  STR 0, 0, 31, 1",
+                "        LDR 1, 0, SIX",
+                "        HLT"), 4, "LDR 1, 0, SIX", "unknown pointer turns constants off");
+        assertLine(optimize(
+                "        LOC 6",
+                "FIVE:   Data 5",
+                "        LOC 100",
+                "START:  STFR 0, 0, FIVE",
+                "        LDR 1, 0, FIVE",
+                "        HLT"), 4, "LDR 1, 0, FIVE", "stored by STFR");
+        assertLine(optimize(
+                "        LOC 6",
+                "VECS:   Data 20",
+                "        Data 30",
+                "        LOC 20",
+                "K:      Data 5",
+                "        LOC 100",
+                "START:  VADD 0, 0, VECS",
+                "        LDR 1, 0, K",
+                "        HLT"), 7, "LDR 1, 0, K", "VADD turns constants off");
+    }
+
+    private static void testJumpToJump() {
+        System.out.println("\n--- Testing Jump to Jump ---");
+
+        List<String> output = optimize(
+                "        LOC 6",
+                "HOPA:   Data HOP",
+                "        LOC 100",
+                "START:  JNE 0, 0, HOP",
+                "        JZ 0, 0, HOPA, 1",
+                "        HLT",
+                "HOP:    JMA 0, FINAL",
+                "FINAL:  HLT");
+        assertLine(output, 3, "JNE 0, 0, FINAL", "jump to a JMA");
+        assertLine(output, 4, "JZ 0, 0, FINAL", "indirect jump through an address constant");
+    }
+
+    private static void testUnreachable() {
+        System.out.println("\n--- Testing Unreachable Code ---");
+
+        List<String> output = optimize(
+                "START:  HLT",
+                "        AIR 0, 1",
+                "NEXT:   AIR 0, 2",
+                "        HLT");
+        assertLine(output, 1, "(removed)", "instruction after HLT removed");
+        assertLine(output, 2, "NEXT:   AIR 0, 2", "labelled instruction kept");
+    }
+
+    private static List<String> optimize(String... source) {
+        return new PeepholeOptimizer().optimize(Arrays.asList(source));
+    }
+
+    private static void assertLine(List<String> output, int line, String expected, String description) {
+        String actual = output.get(line).trim();
+        if (actual.startsWith("; opt: removed")) {
+            actual = "(removed)";
+        } else if (actual.contains(";")) {
+            actual = actual.substring(0, actual.indexOf(';')).trim();
+        }
+        // drop the label so expectations can be written either way
+        String statement = actual.contains(":") ? actual.substring(actual.indexOf(':') + 1).trim() : actual;
+        String expectedStatement = expected.contains(":") ? expected.substring(expected.indexOf(':') + 1).trim() : expected;
+
+        if (statement.equals(expectedStatement)) {
+            System.out.println("PASS: " + description);
+            testsPassed++;
+        } else {
+            System.out.println("FAIL: " + description);
+            System.out.println("  Expected:    " + expected);
+            System.out.println("  Actual:      " + actual);
+            testsFailed++;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package src.assembler;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single-pass assembler for very large (e.g. machine generated) sources. Lines are read one at a time, encoded
+ * immediately and written straight to buffered listing and load writers, so memory use depends on the number of
+ * labels and forward references, not on the size of the source.
+ *
+ * An instruction or Data directive that references labels not defined yet is written with a placeholder word,
+ * and a fixup is recorded for each such operand. When the source is done, each fixup is encoded with the now known
+ * label address and its fixed-width octal word is patched in place in both files. A label defined twice is an
+ * error, as in Assembler.
+ *
+ * Load file output is the same as Assembler's. The listing shows the original source line of every instruction
+ * (Assembler shows the instruction with its labels substituted), because a backpatched line can't change length.
+ */
+public class StreamingAssembler {
+    private static final String NEWLINE = System.lineSeparator();
+    private static final String PLACEHOLDER = "000000";
+
+    /**
+     * A word to patch once its label is defined.
+     */
+    private static class Fixup {
+        final String label;
+        // instruction to re-encode with the label's address as operand labelOperand, opcode -1 for a Data directive
+        final int opcode;
+        final int[] operands;
+        final int labelOperand;
+        final long listingOffset;
+        final long loadOffset;
+        final int lineNumber;
+
+        Fixup(String label, int opcode, int[] operands, int labelOperand, long listingOffset, long loadOffset,
+              int lineNumber) {
+            this.label = label;
+            this.opcode = opcode;
+            this.operands = operands;
+            this.labelOperand = labelOperand;
+            this.listingOffset = listingOffset;
+            this.loadOffset = loadOffset;
+            this.lineNumber = lineNumber;
+        }
+    }
+
+    private final Map<String, Integer> labels = new HashMap<>();
+    private final List<Fixup> fixups = new ArrayList<>();
+    private int currentLoc;
+    private final Lexer lexer = new Lexer();
+    private final int[] operands = new int[Lexer.MAX_OPERANDS];
+    private long listingBytes;
+    private long loadBytes;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1 && args.length != 3) {
+            System.err.println("Usage: java StreamingAssembler <assembly file> [<listing file> <load file>]");
+            System.exit(1);
+        }
+        String listingFile = args.length == 3 ? args[1] : "data/listing.txt";
+        String loadFile = args.length == 3 ? args[2] : "data/load.txt";
+        StreamingAssembler assembler = new StreamingAssembler();
+        int words = assembler.assemble(args[0], listingFile, loadFile);
+        System.out.println("Assembled " + words + " words");
+        System.out.println("Backpatched " + assembler.getBackpatchCount() + " forward references");
+        System.out.println("Listing file: " + listingFile);
+        System.out.println("Load file: " + loadFile);
+    }
+
+    /**
+     * Assembles the input file into the listing and load files in one pass.
+     * @return number of words assembled
+     * @throws IOException on a read or write error
+     * @throws RuntimeException on an assembly error (with the line number)
+     */
+    public int assemble(String assemblyFile, String listingFile, String loadFile) throws IOException {
+        labels.clear();
+        fixups.clear();
+        currentLoc = 0;
+        listingBytes = 0;
+        loadBytes = 0;
+        int words = 0;
+
+        try (BufferedReader in = new BufferedReader(new FileReader(assemblyFile, StandardCharsets.UTF_8));
+             Writer listing = new BufferedWriter(new OutputStreamWriter(
+                     new FileOutputStream(listingFile), StandardCharsets.UTF_8), 1 << 16);
+             Writer load = new BufferedWriter(new OutputStreamWriter(
+                     new FileOutputStream(loadFile), StandardCharsets.US_ASCII), 1 << 16)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                try {
+                    if (processLine(line.trim(), lineNumber, listing, load)) words++;
+                } catch (RuntimeException e) {
+                    throw new RuntimeException("Line " + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+
+        backpatch(listingFile, loadFile);
+        return words;
+    }
+
+    /**
+     * @return true if the line assembled to a word
+     */
+    private boolean processLine(String line, int lineNumber, Writer listing, Writer load) throws IOException {
+        boolean statement = lexer.tokenize(line);
+        if (lexer.hasLabel() && labels.put(lexer.label(), currentLoc) != null) {
+            throw new RuntimeException("Duplicate label " + lexer.label() + ": " + line);
+        }
+        if (!statement) return false;
+
+        int mnemonic = lexer.mnemonicCode();
+        if (mnemonic == Encoder.LOC_DIRECTIVE) {
+            if (lexer.operandCount() < 1) {
+                throw new RuntimeException("LOC directive requires a location: " + line);
+            }
+            if (!lexer.isNumeric(0)) {
+                throw new RuntimeException("Invalid location in LOC directive: " + line);
+            }
+            currentLoc = lexer.value(0);
+            writeListing(listing, line);
+            return false;
+        }
+
+        int opcode = -1;
+        int count;
+        if (mnemonic == Encoder.DATA_DIRECTIVE) {
+            if (lexer.operandCount() < 1) {
+                throw new RuntimeException("Data directive requires a value: " + line);
+            }
+            count = 1;
+        } else {
+            opcode = Encoder.opcodeOf(mnemonic);
+            if (opcode < 0) {
+                throw new RuntimeException("Unknown opcode: " + lexer.mnemonic());
+            }
+            count = lexer.operandCount();
+        }
+
+        // substitute known labels, each later label makes a fixup
+        int forwardFirst = fixups.size();
+        int[] fixupOperands = null;
+        String location = Encoder.convertToOctal(currentLoc, 6);
+        for (int i = 0; i < count; i++) {
+            if (lexer.isNumeric(i)) {
+                operands[i] = lexer.value(i);
+                continue;
+            }
+            String name = lexer.operand(i);
+            Integer address = labels.get(name);
+            if (address != null) {
+                operands[i] = address;
+            } else {
+                operands[i] = 0;
+                if (fixupOperands == null) fixupOperands = new int[count];
+                // the word follows "location " on both lines
+                int wordColumn = location.length() + 1;
+                fixups.add(new Fixup(name, opcode, fixupOperands, i, listingBytes + wordColumn,
+                        loadBytes + wordColumn, lineNumber));
+            }
+        }
+        boolean forward = fixups.size() > forwardFirst;
+        if (forward) {
+            // the line's fixups share one operand array, so the last one patched encodes every label
+            System.arraycopy(operands, 0, fixupOperands, 0, count);
+        }
+
+        String word;
+        if (forward) {
+            word = PLACEHOLDER;
+        } else if (opcode < 0) {
+            word = Encoder.convertToOctal(operands[0], 6);
+        } else {
+            word = Encoder.convertToOctal(encode(opcode, operands, count, line), 6);
+        }
+
+        writeListing(listing, location + " " + word + " " + line);
+        String loadLine = location + " " + word + NEWLINE;
+        load.write(loadLine);
+        loadBytes += loadLine.length();
+        currentLoc++;
+        return true;
+    }
+
+    private static int encode(int opcode, int[] operands, int count, String line) {
+        try {
+            return Encoder.encode(opcode, operands, count);
+        } catch (Exception e) {
+            throw new RuntimeException("Error encoding instruction: " + line + " - " + e.getMessage());
+        }
+    }
+
+    private void writeListing(Writer listing, String text) throws IOException {
+        listing.write(text);
+        listing.write(NEWLINE);
+        listingBytes += utf8Length(text) + NEWLINE.length();
+    }
+
+    /**
+     * Patch every forward reference in place, now that all labels are known. Fixups are in file order, so each
+     * file is patched through a window mapped into memory and moved forward, instead of a seek and write per
+     * fixup.
+     */
+    private void backpatch(String listingFile, String loadFile) throws IOException {
+        if (fixups.isEmpty()) return;
+        try (PatchWindow listing = new PatchWindow(listingFile);
+             PatchWindow load = new PatchWindow(loadFile)) {
+            for (Fixup fixup : fixups) {
+                Integer address = labels.get(fixup.label);
+                if (address == null) {
+                    throw new RuntimeException("Line " + fixup.lineNumber + ": Undefined label " + fixup.label);
+                }
+                int value = address;
+                if (fixup.opcode >= 0) {
+                    fixup.operands[fixup.labelOperand] = address;
+                    value = encode(fixup.opcode, fixup.operands, fixup.operands.length, "line " + fixup.lineNumber);
+                }
+                String octal = Encoder.convertToOctal(value, 6);
+                if (octal.length() != PLACEHOLDER.length()) {
+                    throw new RuntimeException("Line " + fixup.lineNumber + ": " + fixup.label + " = " + value +
+                            " does not fit in a word");
+                }
+                byte[] word = octal.getBytes(StandardCharsets.US_ASCII);
+                listing.patch(fixup.listingOffset, word);
+                load.patch(fixup.loadOffset, word);
+            }
+        }
+    }
+
+    /**
+     * @return forward references patched by the last assemble, one per label operand
+     */
+    public int getBackpatchCount() {
+        return fixups.size();
+    }
+
+    /**
+     * Memory-mapped window over a file, moved forward as patches go past its end.
+     */
+    private static class PatchWindow implements Closeable {
+        private static final long WINDOW_SIZE = 64L << 20;
+
+        private final FileChannel channel;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        PatchWindow(String fileName) throws IOException {
+            channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        void patch(long offset, byte[] bytes) throws IOException {
+            if (window == null || offset < windowStart || offset + bytes.length > windowStart + window.capacity()) {
+                windowStart = offset;
+                long size = Math.min(WINDOW_SIZE, channel.size() - offset);
+                window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, size);
+            }
+            window.put((int) (offset - windowStart), bytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch < 0x80) {
+                length++;
+            } else if (ch < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(ch)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
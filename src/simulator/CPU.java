@@ -1,20 +1,32 @@
 package src.simulator;
 
+import src.assembler.Opcode;
+
 /**
- * CPU stores registers as well as the program counter. It also handles instruction decoding.
+ * CPU stores registers as well as the program counter. It also handles instruction decoding, with the field
+ * layout from Opcode.
  */
 public class CPU {
+    // MSR bits
+    public static final int MSR_INTERRUPT_ENABLE = 1; // deliver device interrupts
+    public static final int MSR_SUPERVISOR = 2;       // running a trap, fault or interrupt handler
+    public static final int MSR_FAULT = 4;            // running the machine fault handler
+
     public short PC;
     public short MAR;
     public short MBR;
     public short IR;
     public byte CC;
+    public short MSR;
+    public byte MFR; // machine fault register, bit n set for fault id n
     public short[] R;
     public short[] IX;
+    public short[] FR; // FR0-FR1, in the FloatingPoint format
 
     public CPU() {
         R = new short[4];   // R0-R3
         IX = new short[4];  // X1-X3, 0 value indicates no indexing (pp. 7)
+        FR = new short[2];
         reset();
     }
 
@@ -26,10 +38,14 @@ public class CPU {
         MAR = 0;
         MBR = 0;
         IR = 0;
+        MSR = 0;
+        MFR = 0;
         for(int i = 0; i < 4; i++) {
             R[i] = 0;
             IX[i] = 0;
         }
+        FR[0] = 0;
+        FR[1] = 0;
     }
 
     /**
@@ -38,8 +54,7 @@ public class CPU {
      * @return opcode (bits 15-10)
      */
     public int getOpcode(short instruction) {
-        int unsigned = instruction & 0xFFFF;
-        return (unsigned >> 10) & 0x3F;
+        return Opcode.codeOf(instruction & 0xFFFF);
     }
 
     /**
@@ -48,8 +63,7 @@ public class CPU {
      * @return register (bits 9-8)
      */
     public int getRegister(short instruction) {
-        int unsigned = instruction & 0xFFFF;
-        return (unsigned >> 8) & 0x03;
+        return Opcode.Field.R.extract(instruction & 0xFFFF);
     }
 
     /**
@@ -58,21 +72,17 @@ public class CPU {
      * @return index register (bits 7-6)
      */
     public int getIndexReg(short instruction) {
-        int unsigned = instruction & 0xFFFF;
-        return (unsigned >> 6) & 0x03;
+        return Opcode.Field.IX.extract(instruction & 0xFFFF);
     }
 
     public int getAL(short instruction) {
-        int unsigned = instruction & 0xFFFF;
-        return (unsigned >> 7) & 0x01;
+        return Opcode.Field.AL.extract(instruction & 0xFFFF);
     }
     public int getLR(short instruction) {
-        int unsigned = instruction & 0xFFFF;
-        return (unsigned >> 6) & 0x01;
+        return Opcode.Field.LR.extract(instruction & 0xFFFF);
     }
     public int getCount(short instruction) {
-        int unsigned = instruction & 0xFFFF;
-        return unsigned & 0x0F;
+        return Opcode.Field.COUNT.extract(instruction & 0xFFFF);
     }
 
     /**
@@ -81,8 +91,7 @@ public class CPU {
      * @return 1 if indirect, 0 if not (bit 5)
      */
     public int getIndirect(short instruction) {
-        int unsigned = instruction & 0xFFFF;
-        return (unsigned >> 5) & 0x01;
+        return Opcode.Field.I.extract(instruction & 0xFFFF);
     }
 
     /**
@@ -91,7 +100,6 @@ public class CPU {
      * @return address (bits 1-4)
      */
     public int getAddress(short instruction) {
-        int unsigned = instruction & 0xFFFF;
-        return unsigned & 0x1F;
+        return Opcode.Field.ADDRESS.extract(instruction & 0xFFFF);
     }
 }
\ No newline at end of file
@@ -1,12 +1,19 @@
 package src.simulator;
 
 import java.util.LinkedHashMap;
+import java.util.function.IntConsumer;
 
 public class Cache {
     // 1st value is the address, 2nd value is the data
     private final LinkedHashMap<Short, Short> cacheMap;
     private static final int CACHE_SIZE = 16;
-    private final Memory memory = new Memory();
+    private final Memory memory;
+    private DeviceBus bus;
+    private IntConsumer writeListener;
+    // performance counters, sampled by the performance panel
+    private long hits;
+    private long misses;
+    private long evictions;
 
     //From projct description page 8:
     /**
@@ -36,39 +43,73 @@ public class Cache {
     // value needs updating, if so, it updates the cache. Cache always writes to memory after checking cache.
 
     public Cache() {
+        this(new Memory());
+    }
+
+    public Cache(Memory memory) {
+        this.memory = memory;
         cacheMap = new LinkedHashMap<>();
     }
     //Public methods:
     //1.   read(address)
-    public short read(int address) {
-        System.out.println("Cache READ: addr=" + address);
-        System.out.println("Cache map: " + cacheMap.toString() + "\n");
-        short addressShort = (short) (address & 0xFFFF);
+    public synchronized short read(int address) {
+        if (bus != null && bus.isMapped(address)) {
+            return bus.readMapped(address); // memory-mapped I/O is never cached
+        }
+        if (Trace.enabled) {
+            System.out.println("Cache READ: addr=" + address);
+            System.out.println("Cache map: " + cacheMap.toString() + "\n");
+        }
+        int unsigned = address & 0xFFFF; // addresses are 16 bits; the cache keys them as shorts
+        short addressShort = (short) unsigned;
         if (isCacheHit(addressShort)) {
+            hits++;
             return cacheMap.get(addressShort);
         } else {
-            short data = memory.read(address);
+            misses++;
+            short data = memory.read(unsigned);
             updateCache(addressShort, data);
             return data;
         }
     }
     //2.   write(address, data)
-    public void write(int address, int data) {
-        System.out.println("Cache WRITE: addr=" + address + " data=" + data);
-        System.out.println("Cache map: " + cacheMap.toString() + "\n");
+    public synchronized void write(int address, int data) {
+        if (bus != null && bus.isMapped(address)) {
+            bus.writeMapped(address, (short) data);
+            return;
+        }
+        if (Trace.enabled) {
+            System.out.println("Cache WRITE: addr=" + address + " data=" + data);
+            System.out.println("Cache map: " + cacheMap.toString() + "\n");
+        }
         short addressShort = (short) (address & 0xFFFF);
         short dataShort = (short) (data & 0xFFFF);
-        memory.write(addressShort, dataShort);
+        memory.write(address & 0xFFFF, dataShort);
         updateCache(addressShort, dataShort);
+        if (writeListener != null) writeListener.accept((address & 0xFFFF) << 16 | (data & 0xFFFF));
     }
     //3.   reset()
-    public void reset() {
+    public synchronized void reset() {
         cacheMap.clear();
     }
     //4.   getCacheMap()
     public LinkedHashMap<Short, Short> getCacheMap() {
         return cacheMap;
     }
+    //4a.  snapshot() - copy of the cache lines, safe to read while the machine runs on another thread
+    public synchronized LinkedHashMap<Short, Short> snapshot() {
+        return new LinkedHashMap<>(cacheMap);
+    }
+    //4b.  getHits(), getMisses(), getEvictions() - read hits/misses and lines replaced since the cache was created
+    public long getHits() {
+        return hits;
+    }
+    public long getMisses() {
+        return misses;
+    }
+    public long getEvictions() {
+        return evictions;
+    }
     //5.   getCacheSize()
     public int getCacheSize() {
         return CACHE_SIZE;
@@ -77,13 +118,49 @@ public class Cache {
     public Memory getMemory() {
         return memory;
     }
+    //7. invalidate(address, length) - drop cached lines after memory changed underneath (DMA)
+    public synchronized void invalidate(int address, int length) {
+        cacheMap.keySet().removeIf(cached -> {
+            int unsigned = cached & 0xFFFF;
+            return unsigned >= address && unsigned < address + length;
+        });
+    }
+    //8. setBus(bus) - memory-mapped device ranges bypass the cache
+    public void setBus(DeviceBus bus) {
+        this.bus = bus;
+    }
+    //9. setWriteListener(listener) - sees every memory write as (address << 16) | data, or null for none
+    public void setWriteListener(IntConsumer listener) {
+        this.writeListener = listener;
+    }
+    //10. addBlock(dest, source, length, subtract) - dest[i] = dest[i] +/- source[i] in one pass over memory, for the
+    // vector instructions. The destination lines are dropped from the cache like after DMA, and the write listener
+    // still sees every word. The caller checks the ranges are in memory and not memory-mapped.
+    public synchronized void addBlock(int dest, int source, int length, boolean subtract) {
+        short[] v1 = new short[length];
+        short[] v2 = new short[length];
+        memory.readBlock(dest, v1, 0, length);
+        memory.readBlock(source, v2, 0, length);
+        // plain loops over primitive arrays, which the JIT compiles to SIMD adds
+        if (subtract) {
+            for (int i = 0; i < length; i++) v1[i] = (short) (v1[i] - v2[i]);
+        } else {
+            for (int i = 0; i < length; i++) v1[i] = (short) (v1[i] + v2[i]);
+        }
+        memory.loadBlock(dest, v1, 0, length);
+        invalidate(dest, length);
+        if (writeListener != null) {
+            for (int i = 0; i < length; i++) writeListener.accept((dest + i) << 16 | (v1[i] & 0xFFFF));
+        }
+    }
 
     //Private methods:
     //1.   updateCache(address, data)
     private void updateCache(short address, short data) {
         if (isCacheFull()) {
             Short value = cacheMap.remove(cacheMap.keySet().iterator().next());
-            System.out.println("Cache is full, removing line " + value);
+            evictions++;
+            if (Trace.enabled) System.out.println("Cache is full, removing line " + value);
         }
         cacheMap.put(address, data);
     }
@@ -95,10 +172,10 @@ public class Cache {
     //4.   isCacheHit(address)
     private boolean isCacheHit(short address) {
         if (cacheMap.containsKey(address)) {
-            System.out.println("Cache hit: " + address);
+            if (Trace.enabled) System.out.println("Cache hit: " + address);
             return true;
         } else {
-            System.out.println("Cache miss: " + address);
+            if (Trace.enabled) System.out.println("Cache miss: " + address);
             return false;
         }
     }
@@ -0,0 +1,163 @@
+package src.simulator;
+
+import src.assembler.Opcode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Guest call graph: JSR is a call and RFS a return, and every instruction's cycles are charged to the subroutine
+ * on top of the call stack. Subroutines are named by the label at their address, from the assembler's symbol
+ * map (see AssemblyResult.getSymbolMap).
+ *
+ * Each distinct call path is a node of a tree, so charging an instruction is one field update; paths are only
+ * looked up on calls. The tree is written as collapsed stacks ("main;FIND_WORD;PRINT_STRING 1234" per line), the
+ * input format of the usual flame graph tools.
+ */
+public class CallGraph {
+    // deeper calls are charged to the deepest frame, in case a program leaves subroutines without RFS
+    private static final int MAX_DEPTH = 1024;
+
+    private static class Node {
+        final String name;
+        final Map<String, Node> children = new LinkedHashMap<>();
+        long calls;
+        long selfCycles;
+
+        Node(String name) {
+            this.name = name;
+        }
+    }
+
+    private final TreeMap<Integer, String> symbols;
+    private final Node[] stack = new Node[MAX_DEPTH];
+    private final int[] returnAddresses = new int[MAX_DEPTH];
+    private int depth = -1; // no root until the first instruction
+
+    /**
+     * @param symbols address to label
+     */
+    public CallGraph(Map<Integer, String> symbols) {
+        this.symbols = new TreeMap<>(symbols);
+    }
+
+    /**
+     * Reads a symbol map file: "address label" lines, addresses in octal. The first label listed for an address
+     * names it.
+     * @throws IOException if the file can't be read
+     */
+    public static CallGraph fromSymbolFile(String fileName) throws IOException {
+        Map<Integer, String> symbols = new HashMap<>();
+        for (String line : FileIO.readSourceFile(fileName)) {
+            String[] fields = line.trim().split("\\s+");
+            if (fields.length < 2) continue;
+            symbols.putIfAbsent(Integer.parseInt(fields[0], 8), fields[1]);
+        }
+        return new CallGraph(symbols);
+    }
+
+    /**
+     * Charge an executed instruction to the current subroutine, then follow a call or return.
+     * @param op the instruction, null if its opcode is illegal
+     * @param address where it was fetched from
+     * @param nextPC PC after it executed
+     */
+    void record(Opcode op, int address, int cycles, int nextPC) {
+        if (depth < 0) {
+            stack[0] = new Node(name(address));
+            stack[0].calls = 1;
+            depth = 0;
+        }
+        stack[depth].selfCycles += cycles;
+
+        if (op == Opcode.JSR && depth + 1 < MAX_DEPTH) {
+            Node callee = stack[depth].children.computeIfAbsent(name(nextPC), Node::new);
+            callee.calls++;
+            stack[++depth] = callee;
+            returnAddresses[depth] = address + 1;
+        } else if (op == Opcode.RFS) {
+            // return to the innermost frame called from there; a return to a caller we never saw is a jump
+            for (int d = depth; d > 0; d--) {
+                if (returnAddresses[d] == nextPC) {
+                    depth = d - 1;
+                    break;
+                }
+            }
+        }
+    }
+
+    private String name(int address) {
+        Map.Entry<Integer, String> label = symbols.floorEntry(address);
+        if (label == null) return String.format("%06o", address);
+        int offset = address - label.getKey();
+        return offset == 0 ? label.getValue() : label.getValue() + "+" + offset;
+    }
+
+    /**
+     * @return one "caller;...;callee cycles" line per call path that executed instructions itself
+     */
+    public List<String> collapsedStacks() {
+        List<String> lines = new ArrayList<>();
+        if (depth >= 0) collapse(stack[0], new StringBuilder(), lines);
+        return lines;
+    }
+
+    private static void collapse(Node node, StringBuilder path, List<String> lines) {
+        int length = path.length();
+        if (length > 0) path.append(';');
+        path.append(node.name);
+        if (node.selfCycles > 0) lines.add(path + " " + node.selfCycles);
+        for (Node child : node.children.values()) {
+            collapse(child, path, lines);
+        }
+        path.setLength(length);
+    }
+
+    public void writeCollapsedStacks(String fileName) throws IOException {
+        FileIO.writeFile(fileName, collapsedStacks());
+    }
+
+    /**
+     * @return per subroutine: calls, exclusive cycles (its own instructions) and inclusive cycles (with its
+     * callees, counted once through recursion), most inclusive cycles first
+     */
+    public List<String> report() {
+        Map<String, long[]> totals = new HashMap<>(); // name to {calls, exclusive, inclusive}
+        long total = (depth >= 0) ? accumulate(stack[0], totals, new HashMap<>()) : 0;
+
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(totals.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue()[2], a.getValue()[2]));
+        List<String> lines = new ArrayList<>(entries.size() + 1);
+        lines.add(String.format("%-24s %8s %12s %12s %7s", "subroutine", "calls", "exclusive", "inclusive", "incl%"));
+        for (Map.Entry<String, long[]> entry : entries) {
+            long[] t = entry.getValue();
+            lines.add(String.format("%-24s %8d %12d %12d %6.1f%%", entry.getKey(), t[0], t[1], t[2],
+                    total == 0 ? 0.0 : 100.0 * t[2] / total));
+        }
+        return lines;
+    }
+
+    /**
+     * @param active names on the path from the root, to count recursive calls' cycles once
+     * @return inclusive cycles of the node
+     */
+    private static long accumulate(Node node, Map<String, long[]> totals, Map<String, Integer> active) {
+        long inclusive = node.selfCycles;
+        active.merge(node.name, 1, Integer::sum);
+        for (Node child : node.children.values()) {
+            inclusive += accumulate(child, totals, active);
+        }
+        int onPath = active.merge(node.name, -1, Integer::sum);
+
+        long[] t = totals.computeIfAbsent(node.name, k -> new long[3]);
+        t[0] += node.calls;
+        t[1] += node.selfCycles;
+        if (onPath == 0) t[2] += inclusive;
+        return inclusive;
+    }
+}
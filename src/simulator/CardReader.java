@@ -0,0 +1,232 @@
+package src.simulator;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Card reader (device 2). Streams a card deck (a text file, one card per line) from disk through a block
+ * buffer, so decks larger than memory are fine.
+ *
+ * Guest programs can read one character per IN, or map the reader's control block (see
+ * Computer.mapCardReader) and have a whole card or block copied into memory in one DMA transfer:
+ *  - word 0: DMA target address
+ *  - word 1: DMA length (max words)
+ *  - word 2: write CMD_READ_CARD or CMD_READ_BLOCK to start a transfer, read back the words transferred
+ *  - word 3: device status (same as CHK), plus STATUS_BAD_ADDRESS if the last transfer's target range was not
+ *    in memory; the next command clears it
+ */
+public class CardReader implements Device {
+    public static final int CONTROL_WORDS = 4;
+    public static final int REG_ADDRESS = 0;
+    public static final int REG_LENGTH = 1;
+    public static final int REG_COMMAND = 2;
+    public static final int REG_STATUS = 3;
+
+    public static final int CMD_READ_CARD = 1;  // one line, newline dropped, null terminated
+    public static final int CMD_READ_BLOCK = 2; // raw characters, newlines included
+
+    public static final int STATUS_BAD_ADDRESS = 16; // last DMA target out of memory, nothing read
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean eof;
+    private boolean error;      // host I/O failure, for the rest of the run
+    private boolean badAddress; // last DMA command only
+
+    private DeviceBus bus;
+    private int id;
+    private int dmaAddress;
+    private int dmaLength;
+    private int lastTransferCount;
+
+    public CardReader(String filename) throws IOException {
+        in = new FileInputStream(filename);
+    }
+
+    @Override
+    public void attach(DeviceBus bus, int id) {
+        this.bus = bus;
+        this.id = id;
+    }
+
+    @Override
+    public int read() {
+        if (in == null) {
+            if (Trace.enabled) System.out.println("Card reader not loaded");
+            return 0;
+        }
+        if (position == limit && !fill()) {
+            // End of file (or error) - return null character, CHK tells them apart
+            return 0;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(short[] words, int offset, int length) {
+        int count = 0;
+        while (count < length && (position < limit || fill())) {
+            int chunk = Math.min(length - count, limit - position);
+            for (int i = 0; i < chunk; i++) {
+                words[offset + count + i] = (short) (buffer[position + i] & 0xFF);
+            }
+            position += chunk;
+            count += chunk;
+        }
+        return count;
+    }
+
+    @Override
+    public void write(int value) {
+        if (Trace.enabled) System.out.println("Card reader: OUT not supported");
+    }
+
+    @Override
+    public int status() {
+        int status = 0;
+        if (in != null && !error && (position < limit || !eof)) status |= STATUS_READY;
+        if (eof && position == limit) status |= STATUS_EOF;
+        if (error) status |= STATUS_ERROR;
+        if (badAddress) status |= STATUS_BAD_ADDRESS;
+        return status;
+    }
+
+    /**
+     * DMA transfer of the next card into memory: the card's characters followed by a null terminator.
+     * A card longer than maxWords - 1 characters is truncated, and the rest of it skipped.
+     * @param address first memory address
+     * @param maxWords size of the target range, including the terminator
+     * @return number of characters transferred (not counting the terminator)
+     */
+    public int transferCard(int address, int maxWords) {
+        if (maxWords <= 0) return 0;
+        short[] card = new short[maxWords];
+        int count = 0;
+        boolean endOfCard = false;
+        while (!endOfCard && (position < limit || fill())) {
+            // copy up to the end of the line or the end of the buffer, whichever comes first
+            while (position < limit) {
+                int ch = buffer[position++] & 0xFF;
+                if (ch == '\n') {
+                    endOfCard = true;
+                    break;
+                }
+                if (ch != '\r' && count < maxWords - 1) {
+                    card[count++] = (short) ch;
+                }
+            }
+        }
+        card[count] = 0;
+        dmaWrite(address, card, count + 1);
+        return count;
+    }
+
+    /**
+     * DMA transfer of the next block of raw characters into memory.
+     * @param address first memory address
+     * @param maxWords number of characters to transfer
+     * @return number of characters transferred, less than maxWords at the end of the deck
+     */
+    public int transferBlock(int address, int maxWords) {
+        if (maxWords <= 0) return 0;
+        short[] block = new short[maxWords];
+        int count = read(block, 0, maxWords);
+        dmaWrite(address, block, count);
+        return count;
+    }
+
+    @Override
+    public short readMapped(int offset) {
+        switch (offset) {
+            case REG_ADDRESS: return (short) dmaAddress;
+            case REG_LENGTH: return (short) dmaLength;
+            case REG_COMMAND: return (short) lastTransferCount;
+            case REG_STATUS: return (short) status();
+            default: return 0;
+        }
+    }
+
+    @Override
+    public void writeMapped(int offset, short value) {
+        switch (offset) {
+            case REG_ADDRESS:
+                dmaAddress = value & 0xFFFF;
+                break;
+            case REG_LENGTH:
+                dmaLength = value & 0xFFFF;
+                break;
+            case REG_COMMAND:
+                badAddress = false;
+                if ((value == CMD_READ_CARD || value == CMD_READ_BLOCK) && !bus.isDmaRange(dmaAddress, dmaLength)) {
+                    // the guest's mistake, not the reader's: reported for this command only, no card consumed
+                    badAddress = true;
+                    lastTransferCount = 0;
+                } else if (value == CMD_READ_CARD) {
+                    lastTransferCount = transferCard(dmaAddress, dmaLength);
+                } else if (value == CMD_READ_BLOCK) {
+                    lastTransferCount = transferBlock(dmaAddress, dmaLength);
+                } else {
+                    if (Trace.enabled) System.out.println("Card reader: unknown command " + value);
+                    break;
+                }
+                bus.raiseInterrupt(id); // transfer complete
+                break;
+            default:
+                break; // status is read-only
+        }
+    }
+
+    @Override
+    public void close() {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                System.err.println("Error closing card reader: " + e.getMessage());
+            }
+            in = null;
+        }
+    }
+
+    private void dmaWrite(int address, short[] words, int length) {
+        if (bus == null) {
+            System.err.println("Card reader: DMA without a bus");
+            error = true;
+            return;
+        }
+        try {
+            bus.dmaWrite(address, words, 0, length);
+        } catch (IllegalArgumentException e) {
+            if (Trace.enabled) System.out.println("Card reader: " + e.getMessage());
+            badAddress = true;
+        }
+    }
+
+    /**
+     * Refill the block buffer from disk.
+     * @return false at the end of the deck or on a read error
+     */
+    private boolean fill() {
+        if (in == null || eof || error) return false;
+        try {
+            int n = in.read(buffer, 0, BUFFER_SIZE);
+            if (n <= 0) {
+                eof = true;
+                if (Trace.enabled) System.out.println("Card reader EOF");
+                return false;
+            }
+            position = 0;
+            limit = n;
+            return true;
+        } catch (IOException e) {
+            System.err.println("Card reader error: " + e.getMessage());
+            error = true;
+            return false;
+        }
+    }
+}
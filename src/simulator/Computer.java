@@ -1,89 +1,159 @@
 package src.simulator;
 
-import src.assembler.Encoder;
+import src.assembler.Disassembler;
+import src.assembler.Opcode;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
 
 public class Computer {
     public CPU cpu;
     public Cache cache;
-    private boolean halted;
-    private boolean waitingForInput;
-    private int waitingRegister;
+    public DeviceBus bus;
     private ComputerSimulatorGUI gui;
-    private BufferedReader cardReader;
-    private String cardReaderFile;
-
-    private static final int LDR = 1;
-    private static final int STR = 2;
-    private static final int LDA = 3;
-    private static final int HLT = 0;
-    private static final int LDX = 33;  //41 octal is 33
-    private static final int STX = 34;
-
-    //transfer instructions
-    private static final int JZ =  8; //10 octal is 8
-    private static final int JNE =  9;
-    private static final int JCC =  10;
-    private static final int JMA =  11;
-    private static final int JSR =  12;
-    private static final int RFS =  13;
-    private static final int SOB =  14;
-    private static final int JGE =  15;
-
-    //arithmetic instructions
-    private static final int AMR =  4;
-    private static final int SMR =  5;
-    private static final int AIR =  6;
-    private static final int SIR =  7;
-
-    //register-register instructions
-    private static final int MLT =  56;
-    private static final int DVD =  57;
-    private static final int TRR =  58;
-    private static final int AND =  59;
-    private static final int ORR =  60;
-    private static final int NOT =  61;
-
-    //shift/rotate instructions
-    private static final int SRC =  25;
-    private static final int RRC =  26;
-
-    //io operations
-    private static final int IN =  49;
-    private static final int OUT =  50;
-    private static final int CHK =  51;
+
+    /**
+     * Run-loop states. IN on a device with no data moves RUNNING to WAITING_FOR_INPUT, and the next run() or
+     * singleStep() completes the pending IN once the device has data.
+     */
+    public enum RunState { STOPPED, RUNNING, WAITING_FOR_INPUT, HALTED }
+
+    private volatile RunState state;
+    private volatile boolean stopRequested;
+    private volatile Thread runThread; // thread inside run(), woken by requestStop
+    private Governor governor;         // null runs at full speed
+    // pending IN while WAITING_FOR_INPUT
+    private int waitingRegister;
+    private int waitingDevice;
+    // set when the current instruction raised a machine fault, so it stops executing
+    private boolean faultPending;
+
+    // reserved low memory locations (pp. 4 of C6461 doc). 3 and 5 are unused by the ISA, so they hold the MSR
+    // saved with the PC.
+    private static final int TRAP_TABLE_ADDR = 0;
+    private static final int FAULT_HANDLER_ADDR = 1;
+    private static final int TRAP_SAVED_PC = 2;
+    private static final int TRAP_SAVED_MSR = 3;
+    private static final int FAULT_SAVED_PC = 4;
+    private static final int FAULT_SAVED_MSR = 5;
+    private static final int RESERVED_WORDS = 6;
+    // vectors at least this long, in plain memory, are added with one bulk pass (see Cache.addBlock)
+    private static final int BULK_VECTOR_LENGTH = 16;
+
+    // device interrupts vector through this trap table entry
+    public static final int INTERRUPT_TRAP_CODE = 15;
+
+    // machine fault ids (MFR bit numbers)
+    public static final int FAULT_RESERVED_ADDRESS = 0;
+    public static final int FAULT_ILLEGAL_TRAP = 1;
+    public static final int FAULT_ILLEGAL_OPCODE = 2;
+    public static final int FAULT_ADDRESS_RANGE = 3;
+
+    private int cardReaderBase = -1; // where the card reader's DMA control block is mapped, or -1
+
+    // performance counters: plain fields bumped by the running thread, sampled by whoever displays them
+    private long instructionCount;
+    private long cycleCount;
+    private final long[] opcodeCounts = new long[64];
+    private long ioWaitNanos;
+    private long waitStartNanos;
+    private Profile profile;
+    private CallGraph callGraph;
+    private Coverage coverage;
+    private GoldenTrace goldenTrace;
 
     public Computer() {
+        this(Memory.DEFAULT_SIZE);
+    }
+
+    /**
+     * @param memorySize words of main memory, up to Memory.MAX_SIZE
+     */
+    public Computer(int memorySize) {
         cpu = new CPU();
-        cache = new Cache();
-        halted = false;
-        waitingForInput = false;
+        cache = new Cache(new Memory(memorySize));
+        bus = new DeviceBus(cache);
+        cache.setBus(bus);
+        state = RunState.STOPPED;
         waitingRegister = -1;
-        cardReader = null;
-        cardReaderFile = null;
+        waitingDevice = -1;
+        bus.register(DeviceBus.KEYBOARD, new ConsoleKeyboard());
+        bus.register(DeviceBus.PRINTER, new ConsolePrinter(new OutputStreamWriter(System.out)));
     }
 
     public void setGUI(ComputerSimulatorGUI gui) {
         this.gui = gui;
+        bus.register(DeviceBus.PRINTER, new ConsolePrinter());
+        connectInputSource();
+    }
+
+    public ConsoleKeyboard getKeyboard() {
+        return (ConsoleKeyboard) bus.getDevice(DeviceBus.KEYBOARD);
+    }
+
+    /**
+     * Send printer output to a sink (headless runs).
+     */
+    public void setPrinterOutput(Writer sink) {
+        bus.register(DeviceBus.PRINTER, new ConsolePrinter(sink));
+        connectInputSource();
+    }
+
+    /**
+     * Feed the keyboard from an input source (stdin, a file, a script) instead of the console field.
+     * The source also sees printer output, so scripted lines can wait for a prompt.
+     */
+    public void setInputSource(InputSource source) {
+        getKeyboard().setSource(source);
+        connectInputSource();
+    }
+
+    private void connectInputSource() {
+        InputSource source = getKeyboard().getSource();
+        getPrinter().setListener(source == null ? null : ch -> source.onOutput((char) ch));
+    }
+
+    public ConsolePrinter getPrinter() {
+        return (ConsolePrinter) bus.getDevice(DeviceBus.PRINTER);
     }
 
+    /**
+     * Load a card deck. A new deck replaces the reader, and its DMA control block stays mapped where it was.
+     */
     public void setCardReaderFile(String filename) {
-        this.cardReaderFile = filename;
         try {
-            if (cardReader != null) {
-                cardReader.close();
+            Device old = bus.getDevice(DeviceBus.CARD_READER);
+            CardReader reader = new CardReader(filename);
+            bus.register(DeviceBus.CARD_READER, reader);
+            if (cardReaderBase >= 0) {
+                if (old != null) bus.unmap(old);
+                bus.map(cardReaderBase, CardReader.CONTROL_WORDS, reader);
             }
-            cardReader = new BufferedReader(new FileReader(filename));
-            System.out.println("Card reader loaded: " + filename);
+            if (Trace.enabled) System.out.println("Card reader loaded: " + filename);
         } catch (IOException e) {
             System.err.println("Error opening card reader file: " + e.getMessage());
-            cardReader = null;
         }
     }
 
+    /**
+     * Map the card reader's DMA control block (CardReader.CONTROL_WORDS words) into memory at base.
+     * Call after setCardReaderFile.
+     * @throws IllegalStateException if no card reader is loaded
+     * @throws IllegalArgumentException if the range overlaps another mapped range
+     */
+    public void mapCardReader(int base) {
+        Device reader = bus.getDevice(DeviceBus.CARD_READER);
+        if (reader == null) {
+            throw new IllegalStateException("No card reader loaded");
+        }
+        bus.unmap(reader);
+        bus.map(base, CardReader.CONTROL_WORDS, reader);
+        cardReaderBase = base;
+    }
+
 //    public static void main(String[] args) {
 //        System.out.println("Running the computer!\n");
 //        Assembler.assembleFile("data/load_store_test.txt", "data/listing.txt", "data/load.txt");
@@ -93,60 +163,161 @@ public class Computer {
 //    }
 
     public void IPL(String programFile, int startAddr) {
-        System.out.println("IPL: Initial Program Load and reset\n");
+        if (Trace.enabled) System.out.println("IPL: Initial Program Load and reset\n");
         cpu.reset();
         cache.reset();
-        halted = false;
+        state = RunState.STOPPED;
 
-        ROMLoader.loadProgram(cache, programFile);
+        int entryPoint = ROMLoader.loadProgram(cache, programFile);
         if(startAddr >= 0) {
             cpu.PC = (short)startAddr;
+        } else if(entryPoint >= 0) {
+            // program images carry their own START address
+            cpu.PC = (short)entryPoint;
         } else {
             throw new IllegalArgumentException("Invalid start address");
         }
-        System.out.println("PC set to " + cpu.PC);
+        if (Trace.enabled) System.out.println("PC set to " + cpu.PC);
+    }
+
+    /**
+     * Overwrite a word of a loaded program, e.g. from IncrementalAssembler while the program runs. The cached copy
+     * is dropped so the next read sees the new word.
+     */
+    public void patchMemory(int address, short word) {
+        cache.getMemory().load(address, word);
+        cache.invalidate(address, 1);
+    }
+
+    public RunState getState() {
+        return state;
     }
 
     public boolean isWaitingForInput() {
-        return waitingForInput;
+        return state == RunState.WAITING_FOR_INPUT;
     }
 
-    public void continueFromInput() {
-        if (!waitingForInput) return;
+    public boolean isHalted() {
+        return state == RunState.HALTED;
+    }
 
-        if (gui != null && gui.hasConsoleInput()) {
-            String input = gui.getConsoleInput();
-            char ch = input.charAt(0);
-            cpu.R[waitingRegister] = (short)(ch & 0xFF);
-            gui.clearConsoleInput();
-            System.out.println("IN: Read '" + ch + "' (ASCII " + (int)ch + ") into R" + waitingRegister);
+    /**
+     * Complete the IN the machine is waiting on, if its device has data now.
+     * @return true if the IN completed
+     */
+    private boolean completePendingInput() {
+        int value = bus.read(waitingDevice);
+        if (value == Device.NO_DATA) return false;
+
+        cpu.R[waitingRegister] = (short)value;
+        ioWaitNanos += System.nanoTime() - waitStartNanos;
+        if (Trace.enabled) System.out.println("IN: Read '" + (char)(value & 0xFF) + "' (ASCII " + value + ") from device " +
+                waitingDevice + " into R" + waitingRegister);
+        waitingRegister = -1;
+        waitingDevice = -1;
+        state = RunState.STOPPED;
+        return true;
+    }
 
-            waitingForInput = false;
-            waitingRegister = -1;
+    /**
+     * Runs thru all single steps, until the machine halts or waits for input. Calling run() again while the
+     * machine waits for input resumes it if the input has arrived.
+     */
+    public void run() {
+        if (state == RunState.HALTED) {
+            if (Trace.enabled) System.out.println("Computer is halted\n");
+            return;
+        }
+        if (state == RunState.WAITING_FOR_INPUT && !completePendingInput()) {
+            return;
+        }
 
-            cpu.PC++;
+        if (Trace.enabled) System.out.println("\nRunning Program");
+        state = RunState.RUNNING;
+        runThread = Thread.currentThread();
+        if (governor == null) {
+            while(state == RunState.RUNNING && !stopRequested) {
+                singleStep();
+            }
+        } else {
+            runGoverned(governor);
+        }
+        runThread = null;
+        if (state == RunState.RUNNING) {
+            state = RunState.STOPPED;
+        }
+        stopRequested = false;
+        bus.flush();
+        if (state == RunState.STOPPED) {
+            if (Trace.enabled) System.out.println("\nProgram stopped");
+        } else if (state == RunState.WAITING_FOR_INPUT) {
+            if (Trace.enabled) System.out.println("\nProgram paused - waiting for console input");
+        } else {
+            if (Trace.enabled) System.out.println("\nProgram execution completed");
+        }
+    }
 
-            if (!halted) {
-                run();
-                if (gui != null) {
-                    gui.updateDisplay();
-                }
+    /**
+     * Run in batches, sleeping between them to hold the governor's rate.
+     */
+    private void runGoverned(Governor governor) {
+        governor.start(instructionCount, cycleCount);
+        int batchSize = governor.batchSize();
+        while (state == RunState.RUNNING && !stopRequested) {
+            for (int i = 0; i < batchSize && state == RunState.RUNNING && !stopRequested; i++) {
+                singleStep();
+            }
+            bus.flush();
+            long delay;
+            while ((delay = governor.delayNanos(instructionCount, cycleCount)) > 0 && !stopRequested) {
+                LockSupport.parkNanos(delay);
             }
         }
     }
 
     /**
-     * Runs thru all single steps.
+     * Pace run() to a target rate, or null (the default) to run at full speed.
      */
-    public void run() {
-        System.out.println("\nRunning Program");
-        while(!halted && !waitingForInput) {
-            singleStep();
+    public void setGovernor(Governor governor) {
+        this.governor = governor;
+    }
+
+    public Governor getGovernor() {
+        return governor;
+    }
+
+    /**
+     * Ask a run() on another thread to stop after the current instruction. The machine is left STOPPED and can
+     * be stepped or run again.
+     */
+    public void requestStop() {
+        stopRequested = true;
+        Thread running = runThread;
+        if (running != null) {
+            LockSupport.unpark(running); // cut a governor sleep short
         }
-        if (waitingForInput) {
-            System.out.println("\nProgram paused - waiting for console input");
-        } else {
-            System.out.println("\nProgram execution completed");
+    }
+
+    /**
+     * Runs until the machine halts, or waits for input the input source can't supply. Timed script lines are
+     * waited for; a line waiting for a prompt the program never prints ends the run.
+     */
+    public void runUnattended() {
+        run();
+        InputSource source = getKeyboard().getSource();
+        while (state == RunState.WAITING_FOR_INPUT && source != null && !source.isExhausted() && !stopRequested
+                && (goldenTrace == null || goldenTrace.getDivergedAt() < 0)) {
+            long wait = source.millisUntilReady();
+            if (wait == InputSource.NOT_READY) break;
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            run();
         }
     }
 
@@ -154,27 +325,48 @@ public class Computer {
      * The core "cycle" of the simulated computer.
      */
     public void singleStep() {
-        if(halted) {
-            System.out.println("Computer is halted\n");
+        if(state == RunState.HALTED) {
+            if (Trace.enabled) System.out.println("Computer is halted\n");
+            return;
+        }
+        if(state == RunState.WAITING_FOR_INPUT) {
+            // the pending IN is this step
+            completePendingInput();
             return;
         }
 
-        System.out.println("\n\nSingle Step Execution\n");
+        if (Trace.enabled) System.out.println("\n\nSingle Step Execution\n");
+        faultPending = false;
+
+        // interrupts are taken between instructions, one volatile read when none are pending
+        if (bus.pendingInterrupts() != 0 &&
+                (cpu.MSR & (CPU.MSR_INTERRUPT_ENABLE | CPU.MSR_SUPERVISOR)) == CPU.MSR_INTERRUPT_ENABLE) {
+            serviceInterrupt();
+        }
+
+        // PC is a short; addresses above 32767 are its negative values
+        int fetchAddress = cpu.PC & 0xFFFF;
+        if (!isValidAddress(fetchAddress)) {
+            machineFault(FAULT_ADDRESS_RANGE, "instruction fetch from " + fetchAddress);
+            return;
+        }
 
         //initialize the cpu - MAR (Memory Address Register) and MBR (Memory Buffer Register) and IR (Instruction Register)
         //set MAR to the PC and MBR to the value stored at MAR. Then set the IR to the value stored at MBR.
         //Finally, increment the PC by one.
+        long missesBefore = cache.getMisses();
         cpu.MAR = cpu.PC;
-        cpu.MBR = cache.read(cpu.MAR);
+        cpu.MBR = cache.read(fetchAddress);
         cpu.IR = cpu.MBR;
         cpu.PC++;
 
         int unsignedIR = cpu.IR & 0xFFFF;
-        System.out.println("FETCH: PC=" + (cpu.PC-1) + " IR=" + unsignedIR +
-                " (octal: " + String.format("%06o", unsignedIR) + ")");
+        if (Trace.enabled) System.out.println("FETCH: PC=" + (cpu.PC-1) + " IR=" + unsignedIR +
+                " (octal: " + String.format("%06o", unsignedIR) + ") " + Disassembler.text(unsignedIR));
 
         // decode step
         int opcode = cpu.getOpcode(cpu.IR);
+        Opcode op = Opcode.of(opcode);
         int reg = cpu.getRegister(cpu.IR);
         int ix = cpu.getIndexReg(cpu.IR);
         int indirect = cpu.getIndirect(cpu.IR);
@@ -183,27 +375,201 @@ public class Computer {
         int lr = cpu.getLR(cpu.IR);
         int count = cpu.getCount(cpu.IR);
 
+        int cycles = Opcode.cycles(opcode) + indirect;
+        instructionCount++;
+        opcodeCounts[opcode]++;
+
         // execute step
-        executeInstruction(opcode, reg, ix, al, lr, count, indirect, address);
+        if (op == null) {
+            machineFault(FAULT_ILLEGAL_OPCODE, "unknown opcode " + opcode);
+        } else {
+            cycles += executeInstruction(op, reg, ix, al, lr, count, indirect, address);
+        }
+        cycleCount += cycles;
+        if (profile != null) {
+            profile.record(fetchAddress, cycles, cache.getMisses() - missesBefore);
+        }
+        if (callGraph != null) {
+            callGraph.record(op, fetchAddress, cycles, cpu.PC & 0xFFFF);
+        }
+        if (coverage != null) {
+            coverage.record(op, fetchAddress, cpu.PC & 0xFFFF);
+        }
+        if (goldenTrace != null && !goldenTrace.record(cpu, fetchAddress)) {
+            requestStop();
+        }
     }
 
+    public long getInstructionCount() {
+        return instructionCount;
+    }
 
+    public long getCycleCount() {
+        return cycleCount;
+    }
 
+    /**
+     * @return instructions executed per opcode (indexed by opcode), a copy
+     */
+    public long[] getOpcodeCounts() {
+        return opcodeCounts.clone();
+    }
+
+    /**
+     * Count executions, cycles and cache misses per instruction address from now on, or stop with null.
+     */
+    public void setProfile(Profile profile) {
+        this.profile = profile;
+    }
+
+    public Profile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Build a call graph from JSR and RFS from now on, or stop with null.
+     */
+    public void setCallGraph(CallGraph callGraph) {
+        this.callGraph = callGraph;
+    }
+
+    public CallGraph getCallGraph() {
+        return callGraph;
+    }
+
+    /**
+     * Record executed addresses and branch directions from now on, or stop with null.
+     */
+    public void setCoverage(Coverage coverage) {
+        this.coverage = coverage;
+    }
+
+    public Coverage getCoverage() {
+        return coverage;
+    }
+
+    /**
+     * Record or check a golden trace from now on, or stop with null. A check stops the run at the first
+     * checkpoint that differs.
+     */
+    public void setGoldenTrace(GoldenTrace trace) {
+        this.goldenTrace = trace;
+        cache.setWriteListener(trace == null ? null : trace::write);
+    }
+
+    public GoldenTrace getGoldenTrace() {
+        return goldenTrace;
+    }
+
+    /**
+     * @return total time spent waiting for console input, including the current wait
+     */
+    public long getIoWaitNanos() {
+        long waiting = (state == RunState.WAITING_FOR_INPUT) ? System.nanoTime() - waitStartNanos : 0;
+        return ioWaitNanos + waiting;
+    }
+
+
+
+
+    /**
+     * Raise a machine fault: set the MFR, save PC and MSR in locations 4 and 5, and jump to the fault handler at
+     * the address in location 1. With no handler installed, or a fault inside the fault handler, the machine
+     * halts. The handler returns with JMA 0,4,1.
+     * @param faultId fault id (MFR bit number)
+     * @param reason description for the trace
+     */
+    private void machineFault(int faultId, String reason) {
+        faultPending = true;
+        cpu.MFR = (byte)(1 << faultId);
+        if (Trace.enabled) System.out.println("MACHINE FAULT " + faultId + ": " + reason);
+
+        int handler = cache.read(FAULT_HANDLER_ADDR) & 0xFFFF;
+        if (handler == 0 || (cpu.MSR & CPU.MSR_FAULT) != 0) {
+            if (Trace.enabled) System.out.println("No machine fault handler, halting");
+            state = RunState.HALTED;
+            return;
+        }
+        cache.write(FAULT_SAVED_PC, cpu.PC);
+        cache.write(FAULT_SAVED_MSR, cpu.MSR);
+        cpu.MSR = (short)((cpu.MSR | CPU.MSR_SUPERVISOR | CPU.MSR_FAULT) & ~CPU.MSR_INTERRUPT_ENABLE);
+        cpu.PC = (short)handler;
+    }
+
+    /**
+     * Enter a trap handler: save PC and MSR in locations 2 and 3, and jump through the trap table at the address
+     * in location 0. The handler returns with JMA 0,2,1.
+     * @param trapCode trap table entry (0-15)
+     * @return false if there is no trap table or no handler for the code
+     */
+    private boolean enterTrap(int trapCode) {
+        int table = cache.read(TRAP_TABLE_ADDR) & 0xFFFF;
+        if (table == 0 || !isValidAddress(table + trapCode)) return false;
+        int handler = cache.read(table + trapCode) & 0xFFFF;
+        if (handler == 0) return false;
+
+        cache.write(TRAP_SAVED_PC, cpu.PC);
+        cache.write(TRAP_SAVED_MSR, cpu.MSR);
+        cpu.MSR = (short)((cpu.MSR | CPU.MSR_SUPERVISOR) & ~CPU.MSR_INTERRUPT_ENABLE);
+        cpu.PC = (short)handler;
+        return true;
+    }
+
+    /**
+     * Deliver pending device interrupts through trap table entry INTERRUPT_TRAP_CODE. The handler finds the
+     * device with CHK (STATUS_INTERRUPT), which also acknowledges it. If no handler is installed the interrupts
+     * stay pending.
+     */
+    private void serviceInterrupt() {
+        if (enterTrap(INTERRUPT_TRAP_CODE)) {
+            if (Trace.enabled) System.out.println("INTERRUPT: devices " + Integer.toBinaryString(bus.pendingInterrupts()) +
+                    ", handler at " + cpu.PC);
+        }
+    }
+
+    private boolean isValidAddress(int address) {
+        return (address >= 0 && address < cache.getMemory().size()) || bus.isMapped(address);
+    }
+
+    /**
+     * Check a data read address, raising a fault if it is out of range.
+     */
+    private boolean checkRead(int address) {
+        if (isValidAddress(address)) return true;
+        machineFault(FAULT_ADDRESS_RANGE, "read from " + address);
+        return false;
+    }
+
+    /**
+     * Check a data write address, raising a fault if it is out of range or a reserved location written
+     * outside a handler.
+     */
+    private boolean checkWrite(int address) {
+        if (!isValidAddress(address)) {
+            machineFault(FAULT_ADDRESS_RANGE, "write to " + address);
+            return false;
+        }
+        if (address < RESERVED_WORDS && (cpu.MSR & CPU.MSR_SUPERVISOR) == 0) {
+            machineFault(FAULT_RESERVED_ADDRESS, "write to reserved location " + address);
+            return false;
+        }
+        return true;
+    }
 
     /**
      * Get the effective address for an instruction. Implementation from pp. 7 of C6461 doc.
      * @param address
      * @param ix
      * @param ind
-     * @return effective address
+     * @return effective address, 0-65535: index registers and pointers hold 16-bit addresses
      */
     private int getEffectiveAddress(int address, int ix, int ind) {
         int effectiveAddress = address;
         if (ix >0 && ix <= 3) {
-            effectiveAddress += cpu.IX[ix];
+            effectiveAddress = (effectiveAddress + cpu.IX[ix]) & 0xFFFF;
         }
-        if (ind == 1) {
-            effectiveAddress = cache.read(effectiveAddress);
+        if (ind == 1 && checkRead(effectiveAddress)) {
+            effectiveAddress = cache.read(effectiveAddress) & 0xFFFF;
         }
         return effectiveAddress;
     }
@@ -217,55 +583,68 @@ public class Computer {
      * @param ix
      * @param indirect
      * @param address
+     * @return cycles beyond the opcode's own cost: one per vector element
      */
-    private void executeInstruction(int opcode, int reg, int ix, int al, int lr, int count, int indirect, int address) {
-        int effectiveAddress = getEffectiveAddress(address, ix, indirect);
+    private int executeInstruction(Opcode opcode, int reg, int ix, int al, int lr, int count, int indirect, int address) {
+        // LDX/STX use the IX field to name the index register, not for indexing
+        int effectiveAddress = getEffectiveAddress(address, opcode.format.indexed ? ix : 0, indirect);
+        if (faultPending) return 0;
+        int extraCycles = 0;
 
-        String opcodeName = Encoder.getOpcodeName(opcode);
-        System.out.println("EXECUTE: " + opcodeName + " (Opcode=" + opcode + ") EA=" + effectiveAddress);
+        if (Trace.enabled) System.out.println("EXECUTE: " + opcode + " (Opcode=" + opcode.code + ") EA=" + effectiveAddress);
 
         switch(opcode) {
             case HLT:
-                System.out.println("HALT instruction");
-                halted = true;
+                if (Trace.enabled) System.out.println("HALT instruction");
+                state = RunState.HALTED;
+                break;
+
+            case TRAP:
+                // trap code is the low 4 bits, same field as the shift count
+                if (Trace.enabled) System.out.println("TRAP: code " + count);
+                if (!enterTrap(count)) {
+                    machineFault(FAULT_ILLEGAL_TRAP, "no trap handler for code " + count);
+                }
                 break;
 
             case LDR:
+                if (!checkRead(effectiveAddress)) break;
                 cpu.R[reg] = cache.read(effectiveAddress);
-                System.out.println("LDR: R" + reg + " = M[" + effectiveAddress + "] = " + cpu.R[reg]);
+                if (Trace.enabled) System.out.println("LDR: R" + reg + " = M[" + effectiveAddress + "] = " + cpu.R[reg]);
                 break;
 
             case STR:
+                if (!checkWrite(effectiveAddress)) break;
                 cache.write(effectiveAddress, cpu.R[reg]);
-                System.out.println("STR: M[" + effectiveAddress + "] = R" + reg + " = " + cpu.R[reg]);
+                if (Trace.enabled) System.out.println("STR: M[" + effectiveAddress + "] = R" + reg + " = " + cpu.R[reg]);
                 break;
 
             case LDA:
                 if (reg >= 0 && reg <= 3) {
                     cpu.R[reg] = (short)effectiveAddress;
-                    System.out.println("LDA: R" + reg + " = " + effectiveAddress);
+                    if (Trace.enabled) System.out.println("LDA: R" + reg + " = " + effectiveAddress);
                 } else {
-                    System.out.println("ERROR: Invalid register " + reg + " for LDA");
+                    if (Trace.enabled) System.out.println("ERROR: Invalid register " + reg + " for LDA");
                 }
 
                 break;
 
             case LDX:
                 if(ix >= 1 && ix <= 3) {
-                    int ldxEA = getEffectiveAddress(address, 0, indirect);
-                    cpu.IX[ix] = cache.read(ldxEA);
-                    System.out.println("LDX: X" + ix + " = M[" + effectiveAddress + "] = " + cpu.IX[ix]);
+                    if (!checkRead(effectiveAddress)) break;
+                    cpu.IX[ix] = cache.read(effectiveAddress);
+                    if (Trace.enabled) System.out.println("LDX: X" + ix + " = M[" + effectiveAddress + "] = " + cpu.IX[ix]);
                 } else {
-                    System.out.println("ERROR: Invalid index register " + ix + " for LDX");
+                    if (Trace.enabled) System.out.println("ERROR: Invalid index register " + ix + " for LDX");
                 }
                 break;
             case STX:
                 if(ix >= 1 && ix <= 3) {
-                    int stxEA = getEffectiveAddress(address, 0, indirect);
-                    cache.write(stxEA, cpu.IX[ix]);
-                    System.out.println("STX: M[" + effectiveAddress + "] = X" + ix + " = " + cpu.IX[ix]);
+                    if (!checkWrite(effectiveAddress)) break;
+                    cache.write(effectiveAddress, cpu.IX[ix]);
+                    if (Trace.enabled) System.out.println("STX: M[" + effectiveAddress + "] = X" + ix + " = " + cpu.IX[ix]);
                 } else {
-                    System.out.println("ERROR: Invalid index register " + ix + " for STX");
+                    if (Trace.enabled) System.out.println("ERROR: Invalid index register " + ix + " for STX");
                 }
                 break;
 
@@ -274,18 +653,18 @@ public class Computer {
             case JZ:
                 if(cpu.R[reg] == 0) {
                     cpu.PC = (short)effectiveAddress;
-                    System.out.println("JZ: R" + reg + " is zero, jumping to " + effectiveAddress);
+                    if (Trace.enabled) System.out.println("JZ: R" + reg + " is zero, jumping to " + effectiveAddress);
                 } else {
-                    System.out.println("JZ: R" + reg + " = " + cpu.R[reg] + " (not zero), no jump");
+                    if (Trace.enabled) System.out.println("JZ: R" + reg + " = " + cpu.R[reg] + " (not zero), no jump");
                 }
                 break;
 
             case JNE: //transfer instructions
                 if(cpu.R[reg] != 0) {
                     cpu.PC = (short)effectiveAddress;
-                    System.out.println("JNE: R" + reg + " is NOT zero, jumping to " + effectiveAddress);
+                    if (Trace.enabled) System.out.println("JNE: R" + reg + " is NOT zero, jumping to " + effectiveAddress);
                 } else {
-                    System.out.println("JNE: R" + reg + " = " + cpu.R[reg] + " (zero), no jump");
+                    if (Trace.enabled) System.out.println("JNE: R" + reg + " = " + cpu.R[reg] + " (zero), no jump");
                 }
                 break;
             case JCC:
@@ -294,60 +673,72 @@ public class Computer {
 
                 if (bitSet) {
                     cpu.PC = (short)effectiveAddress;
-                    System.out.println("JCC: CC bit " + ccBit + " is 1, jumping to " + effectiveAddress);
+                    if (Trace.enabled) System.out.println("JCC: CC bit " + ccBit + " is 1, jumping to " + effectiveAddress);
                 } else {
-                    System.out.println("JCC: CC bit " + ccBit + " is 0, no jump");
+                    if (Trace.enabled) System.out.println("JCC: CC bit " + ccBit + " is 0, no jump");
                 }
                 break;
             case JMA:
                 cpu.PC = (short)effectiveAddress;
-                System.out.println("JMA: jumping to " + effectiveAddress);
+                if (Trace.enabled) System.out.println("JMA: jumping to " + effectiveAddress);
+                // JMA 0,2,1 / JMA 0,4,1 in a handler returns from the trap / fault and restores the saved MSR
+                if (ix == 0 && indirect == 1 && (cpu.MSR & CPU.MSR_SUPERVISOR) != 0) {
+                    if (address == TRAP_SAVED_PC) {
+                        cpu.MSR = cache.read(TRAP_SAVED_MSR);
+                    } else if (address == FAULT_SAVED_PC) {
+                        cpu.MSR = cache.read(FAULT_SAVED_MSR);
+                    }
+                }
                 break;
             case JSR:
                 cpu.R[3] = cpu.PC;
                 cpu.PC = (short)effectiveAddress;
-                System.out.println("JSR: jumping to " + effectiveAddress);
-                System.out.println("JSR: R3 = " + cpu.R[3] + " (return address), PC = " + cpu.PC);
-                System.out.println("Absolute address: " + address);
+                if (Trace.enabled) {
+                    System.out.println("JSR: jumping to " + effectiveAddress);
+                    System.out.println("JSR: R3 = " + cpu.R[3] + " (return address), PC = " + cpu.PC);
+                    System.out.println("Absolute address: " + address);
+                }
                 break;
             case RFS:
                 cpu.R[0] = (short)address;
                 cpu.PC = cpu.R[3];
-                System.out.println("RFS: R0 = " + address + " (return code), PC = R3 = " + cpu.PC);
+                if (Trace.enabled) System.out.println("RFS: R0 = " + address + " (return code), PC = R3 = " + cpu.PC);
                 break;
             case SOB:
                 cpu.R[reg] = (short)(cpu.R[reg] - 1);
                 if (cpu.R[reg] > 0) {
                     cpu.PC = (short)effectiveAddress;
-                    System.out.println("SOB: R" + reg + " = " + cpu.R[reg] + " > 0, branching to " + effectiveAddress);
+                    if (Trace.enabled) System.out.println("SOB: R" + reg + " = " + cpu.R[reg] + " > 0, branching to " + effectiveAddress);
                 } else {
-                    System.out.println("SOB: R" + reg + " = " + cpu.R[reg] + " <= 0, continuing to PC: " + cpu.PC);
+                    if (Trace.enabled) System.out.println("SOB: R" + reg + " = " + cpu.R[reg] + " <= 0, continuing to PC: " + cpu.PC);
                 }
                 break;
             case JGE:
                 if (cpu.R[reg] >= 0) {
                     cpu.PC = (short)effectiveAddress;
-                    System.out.println("JGE: R" + reg + " = " + cpu.R[reg] + " >= 0, branching to " + effectiveAddress);
+                    if (Trace.enabled) System.out.println("JGE: R" + reg + " = " + cpu.R[reg] + " >= 0, branching to " + effectiveAddress);
                 } else {
-                    System.out.println("JGE: R" + reg + " = " + cpu.R[reg] + " < 0, continuing to PC: " + cpu.PC);
+                    if (Trace.enabled) System.out.println("JGE: R" + reg + " = " + cpu.R[reg] + " < 0, continuing to PC: " + cpu.PC);
                 }
                 break;
 
             case AMR: //arithmetic/logical instructions
+                if (!checkRead(effectiveAddress)) break;
                 cpu.R[reg] = (short)(cpu.R[reg] + cache.read(effectiveAddress));
-                System.out.println("AMR: R" + reg + " = R" + reg + " + M[" + effectiveAddress + "] = " + cpu.R[reg]);
+                if (Trace.enabled) System.out.println("AMR: R" + reg + " = R" + reg + " + M[" + effectiveAddress + "] = " + cpu.R[reg]);
                 break;
             case SMR: //subtract memory from register
+                if (!checkRead(effectiveAddress)) break;
                 cpu.R[reg] = (short)(cpu.R[reg] - cache.read(effectiveAddress));
-                System.out.println("SMR: R" + reg + " = R" + reg + " - M[" + effectiveAddress + "] = " + cpu.R[reg]);
+                if (Trace.enabled) System.out.println("SMR: R" + reg + " = R" + reg + " - M[" + effectiveAddress + "] = " + cpu.R[reg]);
                 break;
             case AIR: //add immediate to register
                 cpu.R[reg] = (short)(cpu.R[reg] + (short)address);
-                System.out.println("AIR: R" + reg + " = R" + reg + " + " + address + " = " + cpu.R[reg]);
+                if (Trace.enabled) System.out.println("AIR: R" + reg + " = R" + reg + " + " + address + " = " + cpu.R[reg]);
                 break;
             case SIR: //sub imm from register
                 cpu.R[reg] = (short)(cpu.R[reg] - (short)address);
-                System.out.println("SIR: R" + reg + " = R" + reg + " - " + address + " = " + cpu.R[reg]);
+                if (Trace.enabled) System.out.println("SIR: R" + reg + " = R" + reg + " - " + address + " = " + cpu.R[reg]);
                 break;
 
             case MLT: // register-register instructions section - multiply
@@ -363,11 +754,11 @@ public class Computer {
                         cpu.CC |= 1;
                     }
 
-                    System.out.println("MLT: R" + reg + " * R" + ix + " = " + result +
+                    if (Trace.enabled) System.out.println("MLT: R" + reg + " * R" + ix + " = " + result +
                             " -> R" + reg + "=" + cpu.R[reg] +
                             ", R" + (reg+1) + "=" + cpu.R[reg+1]);
                 } else {
-                    System.out.println("ERROR: MLT requires rx and ry to be 0 or 2");
+                    if (Trace.enabled) System.out.println("ERROR: MLT requires rx and ry to be 0 or 2");
                 }
                 break;
             case DVD:
@@ -381,40 +772,44 @@ public class Computer {
                     cpu.R[reg] = quotient;
                     cpu.R[reg+1] = remainder;
                 } else {
-                    System.out.println("ERROR: DVD requires rx and ry to be 0 or 2");
+                    if (Trace.enabled) System.out.println("ERROR: DVD requires rx and ry to be 0 or 2");
                 }
                 break;
             case TRR:
                 if (cpu.R[reg] == cpu.R[ix]) { // EQ: cpu.cc = 1000 || cpu.CC
                     cpu.CC |= 0b1000;
-                    System.out.println("TRR: R" + reg + " == R" + ix + " (EQUAL)");
-                    System.out.println("TRR: R" + reg + " = " + cpu.R[reg] + " (R" + reg + ")");
-                    System.out.println("TRR: R" + ix + " = " + cpu.R[ix] + " (R" + ix + ")");
+                    if (Trace.enabled) {
+                        System.out.println("TRR: R" + reg + " == R" + ix + " (EQUAL)");
+                        System.out.println("TRR: R" + reg + " = " + cpu.R[reg] + " (R" + reg + ")");
+                        System.out.println("TRR: R" + ix + " = " + cpu.R[ix] + " (R" + ix + ")");
+                    }
                 } else {
                     cpu.CC &= ~0b1000; //set 0 for not eq.
-                    System.out.println("TRR: R" + reg + " != R" + ix + " (NOT EQUAL)");
-                    System.out.println("TRR: R" + reg + " = " + cpu.R[reg] + " (R" + reg + ")");
-                    System.out.println("TRR: R" + ix + " = " + cpu.R[ix] + " (R" + ix + ")");
+                    if (Trace.enabled) {
+                        System.out.println("TRR: R" + reg + " != R" + ix + " (NOT EQUAL)");
+                        System.out.println("TRR: R" + reg + " = " + cpu.R[reg] + " (R" + reg + ")");
+                        System.out.println("TRR: R" + ix + " = " + cpu.R[ix] + " (R" + ix + ")");
+                    }
                 }
                 break;
             case AND:
                 cpu.R[reg] = (short)(cpu.R[reg] & cpu.R[ix]);
-                System.out.println("AND: R" + reg + " & R" + ix + " = " + cpu.R[reg]);
+                if (Trace.enabled) System.out.println("AND: R" + reg + " & R" + ix + " = " + cpu.R[reg]);
                 break;
             case ORR:
                 cpu.R[reg] = (short)(cpu.R[reg] | cpu.R[ix]);
-                System.out.println("ORR: R" + reg + " | R" + ix + " = " + cpu.R[reg]);
+                if (Trace.enabled) System.out.println("ORR: R" + reg + " | R" + ix + " = " + cpu.R[reg]);
                 break;
             case NOT:
                 cpu.R[reg] = (short)(~cpu.R[reg]);
-                System.out.println("NOT: ~R" + reg + " = " + cpu.R[reg]);
+                if (Trace.enabled) System.out.println("NOT: ~R" + reg + " = " + cpu.R[reg]);
                 break;
 
             case SRC: //shift/rotate instructions
                 //c(r) is shifted left (lr == 1) or right (lr == 0) either logically (al == 1) or arithmetically (al == 0)
                 //count is the number of bits to shift (0-7)
                 if (count == 0) {
-                    System.out.println("SRC: R" + reg + " no shift (count=0)");
+                    if (Trace.enabled) System.out.println("SRC: R" + reg + " no shift (count=0)");
                     break;
                 }
 
@@ -426,9 +821,9 @@ public class Computer {
                     int mask = 0xFFFF << (16 - count);
                     if ((original & mask) != 0) {
                         cpu.CC |= 1; //overflow
-                        System.out.println("SRC: R" + reg + " overflow");
+                        if (Trace.enabled) System.out.println("SRC: R" + reg + " overflow");
                     } else {
-                        System.out.println("SRC: R" + reg + " << " + count + " = " + cpu.R[reg]);
+                        if (Trace.enabled) System.out.println("SRC: R" + reg + " << " + count + " = " + cpu.R[reg]);
                     }
                 } else {
                     //shift right, al == 1: logical
@@ -443,9 +838,9 @@ public class Computer {
                     if ((original & mask) != 0) {
                         cpu.CC |= 2;
                         String op = (al == 1) ? ">>>" : ">>";
-                        System.out.println("SRC: R" + reg + " " + op + " " + count + " = " + cpu.R[reg] + " (UNDERFLOW)");
+                        if (Trace.enabled) System.out.println("SRC: R" + reg + " " + op + " " + count + " = " + cpu.R[reg] + " (UNDERFLOW)");
                     } else {
-                        System.out.println("SRC: R" + reg + " >> " + count + " = " + cpu.R[reg]);
+                        if (Trace.enabled) System.out.println("SRC: R" + reg + " >> " + count + " = " + cpu.R[reg]);
                     }
                 }
                 break;
@@ -455,7 +850,7 @@ public class Computer {
                 //count is the number of bits to rotate (0-15)
 
                 if (count == 0) {
-                    System.out.println("RRC: R" + reg + " no rotation (count=0)");
+                    if (Trace.enabled) System.out.println("RRC: R" + reg + " no rotation (count=0)");
                     break;
                 }
 
@@ -465,85 +860,128 @@ public class Computer {
                     // for ex: 0b10110011 rotated left by 2: 0b11001110
                     value = ((value << count) | (value >>> (16 - count))) & 0xFFFF;
                     cpu.R[reg] = (short) value;
-                    System.out.println("RRC: R" + reg + " rotated left by " + count + " = " + cpu.R[reg]);
+                    if (Trace.enabled) System.out.println("RRC: R" + reg + " rotated left by " + count + " = " + cpu.R[reg]);
                 } else {
                     // for ex: 0b10110011 rotated right by 2: 0b11101100
                     value = ((value >>> count) | (value << (16 - count))) & 0xFFFF;
                     cpu.R[reg] = (short) value;
-                    System.out.println("RRC: R" + reg + " rotated right by " + count + " = " + cpu.R[reg]);
+                    if (Trace.enabled) System.out.println("RRC: R" + reg + " rotated right by " + count + " = " + cpu.R[reg]);
                 }
                 break;
 
             case IN:
-                if (address == 0) {  //keyboard
-                    if (gui != null) {
-                        // Get input from GUI console
-                        String input = gui.getConsoleInput();
-                        if (input != null && !input.isEmpty()) {
-                            char ch = input.charAt(0);
-                            cpu.R[reg] = (short)(ch & 0xFF);
-                            gui.clearConsoleInput();
-                            System.out.println("IN: Read '" + ch + "' (ASCII " + (int)ch + ") into R" + reg);
-                        } else {
-                            System.out.println("IN: Waiting for console input for R" + reg);
-                            waitingForInput = true;
-                            waitingRegister = reg;
-                            cpu.PC--; //back-up to read again if no input is given
-                            return;
-                        }
-                    }
-                } else if (address == 2) {  //card reader
-                    if (cardReader != null) {
-                        try {
-                            int ch = cardReader.read();
-                            if (ch == -1) {
-                                // End of file - return null character
-                                cpu.R[reg] = 0;
-                                System.out.println("IN: Card reader EOF, R" + reg + " = 0");
-                            } else {
-                                cpu.R[reg] = (short)(ch & 0xFF);
-                                System.out.println("IN: Card reader read '" + (char)ch + "' (ASCII " + ch + ") into R" + reg);
-                            }
-                        } catch (IOException e) {
-                            System.err.println("IN: Card reader error: " + e.getMessage());
-                            cpu.R[reg] = 0;
-                        }
-                    } else {
-                        System.out.println("IN: Card reader not loaded, R" + reg + " = 0");
-                        cpu.R[reg] = 0;
-                    }
-                } else {
-                    System.out.println("IN: Device " + address + " not implemented");
+                if (bus.getDevice(address) == null) {
+                    if (Trace.enabled) System.out.println("IN: Device " + address + " not implemented");
+                    break;
                 }
+                int inValue = bus.read(address);
+                if (inValue == Device.NO_DATA) {
+                    if (Trace.enabled) System.out.println("IN: Waiting for device " + address + " input for R" + reg);
+                    waitStartNanos = System.nanoTime();
+                    state = RunState.WAITING_FOR_INPUT;
+                    waitingRegister = reg;
+                    waitingDevice = address;
+                    return 0;
+                }
+                cpu.R[reg] = (short)inValue;
+                if (Trace.enabled) System.out.println("IN: Read '" + (char)(inValue & 0xFF) + "' (ASCII " + inValue + ") from device " +
+                        address + " into R" + reg);
                 break;
 
             case OUT:
-                if (address == 1) {  // Console Printer
-                    char ch = (char)(cpu.R[reg] & 0xFF);
-                    if (gui != null) {
-                        if (ch == '\n') {
-                            gui.printToOutput("");
-                        } else {
-                            gui.printChar(ch);
-                        }
-                    }
-                    //debugging
-                    System.out.print(ch);
-                    System.out.flush();
-                    System.out.println("\nOUT: Printed '" + ch + "' (ASCII " + (int)ch + ") from R" + reg);
-                } else {
-                    System.out.println("OUT: Device " + address + " not implemented");
+                if (bus.getDevice(address) == null) {
+                    if (Trace.enabled) System.out.println("OUT: Device " + address + " not implemented");
+                    break;
                 }
+                bus.write(address, cpu.R[reg]);
+                if (Trace.enabled) System.out.println("\nOUT: Wrote '" + (char)(cpu.R[reg] & 0xFF) + "' (ASCII " + (cpu.R[reg] & 0xFF) +
+                        ") from R" + reg + " to device " + address);
                 break;
             case CHK:
-                //not implemented yet
-                //CHK r, DEVID
-                //Check Device Status to Register, r = 0..3
-                //c(r) <- device status
+                //CHK r, DEVID: c(r) <- device status
+                cpu.R[reg] = (short)bus.status(address);
+                if (Trace.enabled) System.out.println("CHK: R" + reg + " = status of device " + address + " = " + cpu.R[reg]);
+                break;
+
+            case FADD: //floating point and vector instructions, fr is FR0 or FR1
+            case FSUB:
+                if (!checkFloatingRegister(reg) || !checkRead(effectiveAddress)) break;
+                double operand = FloatingPoint.toDouble(cache.read(effectiveAddress));
+                double sum = FloatingPoint.toDouble(cpu.FR[reg]) + (opcode == Opcode.FADD ? operand : -operand);
+                cpu.FR[reg] = FloatingPoint.fromDouble(sum);
+                cpu.CC |= FloatingPoint.conditionFlags(sum);
+                if (Trace.enabled) System.out.println(opcode + ": FR" + reg + " = " + FloatingPoint.toDouble(cpu.FR[reg]));
+                break;
+            case VADD:
+            case VSUB:
+                if (!checkFloatingRegister(reg)) break;
+                extraCycles = vectorAdd(reg, effectiveAddress, opcode == Opcode.VSUB);
+                break;
+            case CNVRT:
+                //r = 0: c(r) <- fixed(c(EA)); r = 1: FR0 <- float(c(EA))
+                if (!checkRead(effectiveAddress)) break;
+                short converted = cache.read(effectiveAddress);
+                if (cpu.R[reg] == 0) {
+                    double fixed = FloatingPoint.toDouble(converted);
+                    if (fixed > Short.MAX_VALUE || fixed < Short.MIN_VALUE) cpu.CC |= FloatingPoint.OVERFLOW;
+                    cpu.R[reg] = FloatingPoint.toFixed(converted);
+                    if (Trace.enabled) System.out.println("CNVRT: R" + reg + " = " + cpu.R[reg]);
+                } else if (cpu.R[reg] == 1) {
+                    cpu.FR[0] = FloatingPoint.fromFixed(converted);
+                    if (Trace.enabled) System.out.println("CNVRT: FR0 = " + FloatingPoint.toDouble(cpu.FR[0]));
+                } else {
+                    machineFault(FAULT_ILLEGAL_OPCODE, "CNVRT with R" + reg + " = " + cpu.R[reg]);
+                }
+                break;
+            case LDFR:
+                if (!checkFloatingRegister(reg) || !checkRead(effectiveAddress)) break;
+                cpu.FR[reg] = cache.read(effectiveAddress);
+                if (Trace.enabled) System.out.println("LDFR: FR" + reg + " = M[" + effectiveAddress + "] = " + FloatingPoint.toDouble(cpu.FR[reg]));
+                break;
+            case STFR:
+                if (!checkFloatingRegister(reg) || !checkWrite(effectiveAddress)) break;
+                cache.write(effectiveAddress, cpu.FR[reg]);
+                if (Trace.enabled) System.out.println("STFR: M[" + effectiveAddress + "] = FR" + reg);
                 break;
             default:
-                System.out.println("Unknown opcode: " + opcode);
-                halted = true;
+                machineFault(FAULT_ILLEGAL_OPCODE, "unknown opcode " + opcode.code);
+        }
+        return extraCycles;
+    }
+
+    private boolean checkFloatingRegister(int reg) {
+        if (reg < cpu.FR.length) return true;
+        machineFault(FAULT_ILLEGAL_OPCODE, "no floating register FR" + reg);
+        return false;
+    }
+
+    /**
+     * VADD/VSUB: c(fr) is the length, c(EA) the address of V1 and c(EA+1) of V2; V1[i] = V1[i] +/- V2[i] as 16-bit
+     * integers. Long vectors in plain memory go through Cache.addBlock, anything else (device registers, reserved
+     * words, a V2 that V1's writes would change) element by element, stopping at the first fault.
+     * @return the elements done
+     */
+    private int vectorAdd(int reg, int effectiveAddress, boolean subtract) {
+        if (!checkRead(effectiveAddress) || !checkRead(effectiveAddress + 1)) return 0;
+        int length = (int) Math.max(0, Math.min(Integer.MAX_VALUE, FloatingPoint.toDouble(cpu.FR[reg])));
+        int v1 = cache.read(effectiveAddress) & 0xFFFF;
+        int v2 = cache.read(effectiveAddress + 1) & 0xFFFF;
+        if (Trace.enabled) System.out.println((subtract ? "VSUB" : "VADD") + ": " + length + " elements at " + v1 + ", " + v2);
+
+        int size = cache.getMemory().size();
+        if (length >= BULK_VECTOR_LENGTH && length <= size - v1 && length <= size - v2
+                && (v1 >= RESERVED_WORDS || (cpu.MSR & CPU.MSR_SUPERVISOR) != 0)
+                && !(v2 < v1 && v1 - v2 < length)
+                && !bus.isMapped(v1, length) && !bus.isMapped(v2, length)) {
+            cache.addBlock(v1, v2, length, subtract);
+            return length;
+        }
+        for (int i = 0; i < length; i++) {
+            if (!checkRead(v1 + i) || !checkRead(v2 + i) || !checkWrite(v1 + i)) return i;
+            short a = cache.read(v1 + i);
+            short b = cache.read(v2 + i);
+            cache.write(v1 + i, subtract ? a - b : a + b);
         }
+        return length;
     }
 }
\ No newline at end of file
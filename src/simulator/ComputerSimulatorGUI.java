@@ -1,27 +1,40 @@
 package src.simulator;
 
+import src.assembler.IncrementalAssembler;
+
 import javax.swing.*;
+import javax.swing.text.Element;
 import java.awt.*;
 import java.util.Map;
 
 public class ComputerSimulatorGUI extends JFrame {
+    private static final int MAX_PRINTER_LINES = 1000;
+    private static final int MAX_REFRESH_FPS = 20;
+    private static final int REFRESH_MS = 1000 / MAX_REFRESH_FPS;
+
     private Computer computer;
+    private Thread worker; // runs the machine so the EDT stays free
+    private Thread sourceWatcher; // re-assembles the watched source on save
 
     private final JTextField[] gprFields = new JTextField[4];
     private final JTextField[] ixrFields = new JTextField[4];
-    private JTextField pcField, marField, mbrField, irField;
-    private String inputBuffer = "";
-    private int inputBufferPosition = 0;
+    private JTextField pcField, marField, mbrField, irField, mfrField;
 
     private JTextArea binaryDisplay;
 
     private JTextField octalInput;
 
     private JTextArea cacheDisplay;
+    private MemoryPanel memoryPanel;
+    private PerformancePanel performancePanel;
     private JTextArea printerOutput;
     private JTextField consoleInputField;
     private JTextField loadFileField;
     private JTextField cardReaderFileField;
+    private JTextField cardDmaField;
+    private JComboBox<String> speedModeBox;
+    private JTextField speedField;
+    private JTextField sourceFileField;
 
     public ComputerSimulatorGUI() {
         computer = new Computer();
@@ -30,11 +43,15 @@ public class ComputerSimulatorGUI extends JFrame {
         loadFileField.setText("data/load.txt");
         cardReaderFileField.setText("data/card.txt");
         updateDisplay();
+
+        // printer output and, while running, the register display are refreshed at a capped rate
+        Timer refreshTimer = new Timer(REFRESH_MS, _ -> refresh());
+        refreshTimer.start();
     }
 
     private void setupUI() {
         setTitle("CSCI 6461 Machine Simulator");
-        setSize(1200, 600);
+        setSize(1550, 700);
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         setLayout(new BorderLayout(10, 10));
 
@@ -49,12 +66,24 @@ public class ComputerSimulatorGUI extends JFrame {
         JPanel rightPanel = createRightPanel();
         mainPanel.add(rightPanel, BorderLayout.EAST);
 
+        JPanel leftPanel = new JPanel(new BorderLayout(0, 10));
+        leftPanel.setOpaque(false);
+        leftPanel.setPreferredSize(new Dimension(340, 0));
+        memoryPanel = new MemoryPanel();
+        memoryPanel.setMemory(computer.cache.getMemory());
+        leftPanel.add(memoryPanel, BorderLayout.CENTER);
+        performancePanel = new PerformancePanel();
+        performancePanel.setComputer(computer);
+        leftPanel.add(performancePanel, BorderLayout.SOUTH);
+        mainPanel.add(leftPanel, BorderLayout.WEST);
+
         add(mainPanel);
+        // typed lines go straight into the keyboard's type-ahead buffer
         consoleInputField.addActionListener(e -> {
-            System.out.println("Console input: " + consoleInputField.getText());
-            System.out.println("isWaitingForInput: " + computer.isWaitingForInput());
-            if (computer.isWaitingForInput()) {
-                computer.continueFromInput();
+            computer.getKeyboard().offer(consoleInputField.getText() + "\n");
+            consoleInputField.setText("");
+            if (computer.isWaitingForInput() && !isRunning()) {
+                run();
             }
         });
     }
@@ -242,7 +271,7 @@ public class ComputerSimulatorGUI extends JFrame {
         gbc.gridx = 10;
         panel.add(new JLabel("MFR"), gbc);
         gbc.gridy = 4;
-        JTextField mfrField = new JTextField("MOTR", 18);
+        mfrField = new JTextField("MOTR", 18);
         mfrField.setEditable(false);
         panel.add(mfrField, gbc);
 
@@ -313,7 +342,11 @@ public class ComputerSimulatorGUI extends JFrame {
         panel.add(iplBtn);
         panel.add(loadPlusBtn);
         panel.add(stepBtn);
-        panel.add(new JLabel());
+        JCheckBox traceBox = new JCheckBox("Trace", Trace.enabled);
+        traceBox.setOpaque(false);
+        traceBox.setToolTipText("Print the execution trace to stdout (slows long runs down)");
+        traceBox.addActionListener(_ -> Trace.enabled = traceBox.isSelected());
+        panel.add(traceBox);
         panel.add(storeBtn);
         panel.add(haltBtn);
         panel.add(storePlusBtn);
@@ -334,6 +367,36 @@ public class ComputerSimulatorGUI extends JFrame {
         panel.add(new JLabel("Card Reader File"));
         cardReaderFileField = new JTextField(15);
         panel.add(cardReaderFileField);
+        panel.add(new JLabel("DMA at"));
+        cardDmaField = new JTextField(6);
+        cardDmaField.setToolTipText("Octal address to map the card reader's DMA control block at, empty for none");
+        panel.add(cardDmaField);
+
+        panel.add(Box.createHorizontalStrut(10));
+        panel.add(new JLabel("Speed"));
+        speedModeBox = new JComboBox<>(new String[] {"Unlimited", "IPS", "Clock Hz"});
+        panel.add(speedModeBox);
+        speedField = new JTextField("1000", 7);
+        speedField.setEnabled(false);
+        speedModeBox.addActionListener(_ -> speedField.setEnabled(speedModeBox.getSelectedIndex() != 0));
+        panel.add(speedField);
+
+        panel.add(Box.createHorizontalStrut(10));
+        panel.add(new JLabel("Source"));
+        sourceFileField = new JTextField(15);
+        panel.add(sourceFileField);
+        JCheckBox watchBox = new JCheckBox("Watch");
+        watchBox.setOpaque(false);
+        watchBox.setToolTipText("Re-assemble the source into the program file on every save, " +
+                "and patch the loaded program");
+        watchBox.addActionListener(_ -> {
+            if (watchBox.isSelected()) {
+                startWatching();
+            } else {
+                stopWatching();
+            }
+        });
+        panel.add(watchBox);
         return panel;
     }
 
@@ -394,6 +457,7 @@ public class ComputerSimulatorGUI extends JFrame {
     }
 
     private void loadToGPR(int index) {
+        if (isRunning()) return;
         int value = validateAndParseOctal();
         if (value == -1) return;
 
@@ -404,6 +468,7 @@ public class ComputerSimulatorGUI extends JFrame {
     }
 
     private void loadToIXR(int index) {
+        if (isRunning()) return;
         int value = validateAndParseOctal();
         if (value == -1) return;
 
@@ -414,6 +479,7 @@ public class ComputerSimulatorGUI extends JFrame {
     }
 
     private void loadToPC() {
+        if (isRunning()) return;
         int value = validateAndParseOctal();
         if (value == -1) return;
 
@@ -424,6 +490,7 @@ public class ComputerSimulatorGUI extends JFrame {
     }
 
     private void loadToMAR() {
+        if (isRunning()) return;
         int value = validateAndParseOctal();
         if (value == -1) return;
 
@@ -434,6 +501,7 @@ public class ComputerSimulatorGUI extends JFrame {
     }
 
     private void loadToMBR() {
+        if (isRunning()) return;
         int value = validateAndParseOctal();
         if (value == -1) return;
 
@@ -444,6 +512,7 @@ public class ComputerSimulatorGUI extends JFrame {
     }
 
     private void load() {
+        if (isRunning()) return;
         int value = validateAndParseOctal();
         if (value == -1) return;
 
@@ -458,38 +527,157 @@ public class ComputerSimulatorGUI extends JFrame {
     }
 
     private void ipl() {
+        stopWorker();
+        flushPrinter();
         String loadFile = loadFileField.getText();
         String cardReaderFile = cardReaderFileField.getText();
         computer = new Computer();
         computer.setGUI(this);
         if (cardReaderFile != null && !cardReaderFile.trim().isEmpty()) {
             computer.setCardReaderFile(cardReaderFile.trim());
+            String cardDma = cardDmaField.getText().trim();
+            if (!cardDma.isEmpty()) {
+                try {
+                    computer.mapCardReader(Integer.parseInt(cardDma, 8));
+                } catch (IllegalArgumentException | IllegalStateException ex) {
+                    JOptionPane.showMessageDialog(this, "Can't map the card reader at " + cardDma + ": " +
+                            ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
         }
+        memoryPanel.setMemory(computer.cache.getMemory());
+        performancePanel.setComputer(computer);
         computer.IPL(loadFile, Integer.parseInt(pcField.getText().trim(), 8));
         updateDisplay();
         JOptionPane.showMessageDialog(this, "Program loaded successfully!");
     }
 
     private void step() {
+        if (isRunning()) return;
         computer.singleStep();
+        flushPrinter();
         updateDisplay();
     }
 
+    /**
+     * Run the machine on the worker thread. It stops when the program halts, waits for input, or Halt is pressed;
+     * the display catches up on the EDT afterwards.
+     */
     private void run() {
-        computer.run();
+        if (isRunning()) return;
+        if (!applySpeed()) return;
+        Computer running = computer;
+        worker = new Thread(() -> {
+            running.run();
+            SwingUtilities.invokeLater(() -> runFinished(running));
+        }, "simulator");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Set the machine's governor from the Speed controls.
+     * @return false if the rate is invalid
+     */
+    private boolean applySpeed() {
+        int mode = speedModeBox.getSelectedIndex();
+        if (mode == 0) {
+            computer.setGovernor(null);
+            return true;
+        }
+        try {
+            long rate = Long.parseLong(speedField.getText().trim());
+            computer.setGovernor(mode == 1 ? Governor.instructionsPerSecond(rate) : Governor.clockHz(rate));
+            return true;
+        } catch (IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(this, "Speed must be a positive number!", "Error", JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+    }
+
+    private void runFinished(Computer finished) {
+        if (finished != computer) return; // an IPL replaced the machine meanwhile
+        flushPrinter();
         updateDisplay();
 
-        if (!computer.isWaitingForInput()) {
+        if (finished.isHalted()) {
             JOptionPane.showMessageDialog(this, "Program execution completed!");
         }
     }
 
     private void halt() {
+        stopWorker();
+        flushPrinter();
         updateDisplay();
         JOptionPane.showMessageDialog(this, "Halted!");
     }
 
+    /**
+     * While a program runs the worker thread owns the CPU and memory, so handlers that change them return early.
+     */
+    private boolean isRunning() {
+        return worker != null && worker.isAlive();
+    }
+
+    /**
+     * Stop a running program after its current instruction, and wait for the worker to finish.
+     */
+    private void stopWorker() {
+        if (!isRunning()) return;
+        computer.requestStop();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Re-assemble the source field's file into the program file whenever it is saved. Words that changed are
+     * patched into the loaded program's memory, even while it runs.
+     */
+    private void startWatching() {
+        stopWatching();
+        String sourceFile = sourceFileField.getText().trim();
+        IncrementalAssembler assembler =
+                new IncrementalAssembler(sourceFile, "data/listing.txt", loadFileField.getText().trim());
+        assembler.setListener((address, word) ->
+                SwingUtilities.invokeLater(() -> computer.patchMemory(address, word)));
+        sourceWatcher = new Thread(() -> {
+            try {
+                assembler.watch();
+            } catch (InterruptedException e) {
+                // Watch was unchecked
+            } catch (Exception e) {
+                System.err.println("Watch failed: " + e.getMessage());
+            }
+        }, "source-watcher");
+        sourceWatcher.setDaemon(true);
+        sourceWatcher.start();
+    }
+
+    private void stopWatching() {
+        if (sourceWatcher != null) {
+            sourceWatcher.interrupt();
+            sourceWatcher = null;
+        }
+    }
+
+    /**
+     * Timer tick: move printer output to the window, and refresh the registers while a program runs.
+     * The memory view repaints only the words that changed, so it is refreshed every tick.
+     */
+    private void refresh() {
+        flushPrinter();
+        if (isRunning()) {
+            updateDisplay();
+        } else {
+            memoryPanel.refresh();
+        }
+    }
+
     private void store() {
+        if (isRunning()) return;
         int address = computer.cpu.MAR & 0xFFFF;
         short value = computer.cache.read(address);
         computer.cpu.MBR = value;
@@ -500,12 +688,14 @@ public class ComputerSimulatorGUI extends JFrame {
     }
 
     private void loadPlus() {
+        if (isRunning()) return;
         load();
         computer.cpu.MAR++;
         updateDisplay();
     }
 
     private void storePlus() {
+        if (isRunning()) return;
         store();
         computer.cpu.MAR++;
         updateDisplay();
@@ -525,9 +715,12 @@ public class ComputerSimulatorGUI extends JFrame {
         marField.setText(String.format("%06o", computer.cpu.MAR & 0xFFFF));
         mbrField.setText(String.format("%06o", computer.cpu.MBR & 0xFFFF));
         irField.setText(String.format("%06o", computer.cpu.IR & 0xFFFF));
+        // MFR bits in MOTR order: Address range, illegal Opcode, illegal Trap, Reserved location
+        mfrField.setText(String.format("%4s", Integer.toBinaryString(computer.cpu.MFR & 0xF)).replace(' ', '0'));
 
         updateBinaryDisplay();
         updateCacheDisplay();
+        memoryPanel.refresh();
     }
 
     private void updateBinaryDisplay() {
@@ -546,7 +739,7 @@ public class ComputerSimulatorGUI extends JFrame {
     private void updateCacheDisplay() {
         StringBuilder cache = new StringBuilder();
 
-        var cacheMap = computer.cache.getCacheMap();
+        var cacheMap = computer.cache.snapshot();
         int iter = 0;
         for (Map.Entry<Short,Short> cacheLoc : cacheMap.entrySet()) {
             iter++;
@@ -559,44 +752,21 @@ public class ComputerSimulatorGUI extends JFrame {
         cacheDisplay.setText(cache.toString());
     }
 
-    public void printChar(char ch) {
-        printerOutput.append(String.valueOf(ch));
-        printerOutput.setCaretPosition(printerOutput.getDocument().getLength());
-    }
-
-    public void printToOutput(String text) {
-        printerOutput.append(text + "\n");
-        printerOutput.setCaretPosition(printerOutput.getDocument().getLength());
-    }
-
     /**
-     * updated to go thru string input buffer
-     * @return
+     * Move buffered printer output into the printer window in one update, keeping at most
+     * MAX_PRINTER_LINES lines. Runs on the EDT from refreshTimer.
      */
-    public boolean hasConsoleInput() {
-        String fieldText = consoleInputField.getText();
-        if (!fieldText.isEmpty() && inputBuffer.isEmpty()) {
-            inputBuffer = fieldText + "\n";
-            inputBufferPosition = 0;
-        }
-        return inputBufferPosition < inputBuffer.length();
-    }
-
-    public String getConsoleInput() {
-        if (inputBufferPosition < inputBuffer.length()) {
-            String result = String.valueOf(inputBuffer.charAt(inputBufferPosition));
-            inputBufferPosition++;
-            return result;
-        }
-        return "";
-    }
-
-    public void clearConsoleInput() {
-        if (inputBufferPosition >= inputBuffer.length()) {
-            consoleInputField.setText("");
-            inputBuffer = "";
-            inputBufferPosition = 0;
+    private void flushPrinter() {
+        String text = computer.getPrinter().drain();
+        if (text.isEmpty()) return;
+
+        printerOutput.append(text);
+        Element root = printerOutput.getDocument().getDefaultRootElement();
+        int excessLines = root.getElementCount() - MAX_PRINTER_LINES;
+        if (excessLines > 0) {
+            printerOutput.replaceRange("", 0, root.getElement(excessLines - 1).getEndOffset());
         }
+        printerOutput.setCaretPosition(printerOutput.getDocument().getLength());
     }
 
     public static void main(String[] args) {
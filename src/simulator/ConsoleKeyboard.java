@@ -0,0 +1,113 @@
+package src.simulator;
+
+/**
+ * Console keyboard (device 0). Typed text is pushed into a type-ahead ring buffer (by the GUI console field,
+ * or by a script through offer), and IN takes characters out of it. With an InputSource attached, the keyboard
+ * pulls the next line from it whenever the buffer runs dry. When there is still nothing to read IN gets
+ * NO_DATA and the machine waits for input.
+ */
+public class ConsoleKeyboard implements Device {
+    private static final int CAPACITY = 4096;
+
+    private final char[] ring = new char[CAPACITY];
+    private int head;  // next character to read
+    private int count; // characters buffered
+
+    private DeviceBus bus;
+    private int id;
+    private InputSource source;
+    private InputRecorder recorder;
+
+    @Override
+    public void attach(DeviceBus bus, int id) {
+        this.bus = bus;
+        this.id = id;
+    }
+
+    /**
+     * Attach a source that input lines are pulled from when the buffer is empty (null to detach).
+     */
+    public synchronized void setSource(InputSource source) {
+        this.source = source;
+    }
+
+    public synchronized InputSource getSource() {
+        return source;
+    }
+
+    /**
+     * Record every line entering the keyboard, typed or pulled from a source (null to stop recording).
+     */
+    public synchronized void setRecorder(InputRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Push typed text into the type-ahead buffer, and raise a keyboard interrupt.
+     * @param text characters to add, a line typed on the console should end with '\n'
+     * @return number of characters accepted, less than text.length() if the buffer filled up
+     */
+    public int offer(CharSequence text) {
+        int accepted;
+        synchronized (this) {
+            accepted = enqueue(text);
+        }
+        if (accepted < text.length()) {
+            System.err.println("Keyboard buffer full, dropped " + (text.length() - accepted) + " characters");
+        }
+        if (accepted > 0 && bus != null) {
+            bus.raiseInterrupt(id);
+        }
+        return accepted;
+    }
+
+    public synchronized boolean hasInput() {
+        return count > 0;
+    }
+
+    @Override
+    public synchronized int read() {
+        if (count == 0 && !pullFromSource()) return NO_DATA;
+        char ch = ring[head];
+        head = (head + 1) % CAPACITY;
+        count--;
+        return ch & 0xFF;
+    }
+
+    @Override
+    public void write(int value) {
+        if (Trace.enabled) System.out.println("Keyboard: OUT not supported");
+    }
+
+    @Override
+    public synchronized int status() {
+        if (count > 0) return STATUS_READY;
+        return (source != null && !source.isExhausted() && source.millisUntilReady() == 0) ? STATUS_READY : 0;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (source != null) source.close();
+        source = null;
+    }
+
+    private boolean pullFromSource() {
+        if (source == null) return false;
+        String line = source.poll();
+        if (line == null) return false;
+        enqueue(line + "\n");
+        return count > 0;
+    }
+
+    private int enqueue(CharSequence text) {
+        int accepted = 0;
+        while (accepted < text.length() && count < CAPACITY) {
+            ring[(head + count) % CAPACITY] = text.charAt(accepted++);
+            count++;
+        }
+        if (recorder != null && accepted > 0) {
+            recorder.record(text.subSequence(0, accepted));
+        }
+        return accepted;
+    }
+}
@@ -0,0 +1,104 @@
+package src.simulator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.function.IntConsumer;
+
+/**
+ * Console printer (device 1). Characters are collected in a buffer on the device side instead of being pushed
+ * out one at a time:
+ *  - in the GUI, the printer window drains the buffer on a timer (see ComputerSimulatorGUI.flushPrinter)
+ *  - headless, the buffer is written to a Writer sink when it fills up, and on flush()
+ */
+public class ConsolePrinter implements Device {
+    private static final int SINK_FLUSH_THRESHOLD = 8192;
+    // the GUI only shows the last lines anyway, so an undrained buffer doesn't need to grow past this
+    private static final int MAX_PENDING = 64 * 1024;
+
+    private final Writer sink;
+    private final StringBuilder pending = new StringBuilder();
+    private IntConsumer listener;
+
+    /**
+     * Printer whose output is drained by the GUI printer window.
+     */
+    public ConsolePrinter() {
+        this.sink = null;
+    }
+
+    /**
+     * Headless printer writing to a sink (stdout, a file, ...).
+     */
+    public ConsolePrinter(Writer sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Have every printed character passed to a listener as well, e.g. a script waiting for a prompt
+     * (null to remove).
+     */
+    public synchronized void setListener(IntConsumer listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public int read() {
+        if (Trace.enabled) System.out.println("Printer: IN not supported");
+        return 0;
+    }
+
+    @Override
+    public synchronized void write(int value) {
+        pending.append((char)(value & 0xFF));
+        if (listener != null) listener.accept(value & 0xFF);
+        afterWrite();
+    }
+
+    @Override
+    public synchronized void write(short[] buffer, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            pending.append((char)(buffer[offset + i] & 0xFF));
+            if (listener != null) listener.accept(buffer[offset + i] & 0xFF);
+        }
+        afterWrite();
+    }
+
+    @Override
+    public int status() {
+        return STATUS_READY;
+    }
+
+    /**
+     * Take everything printed since the last drain.
+     * @return the pending text, empty if nothing was printed
+     */
+    public synchronized String drain() {
+        if (pending.length() == 0) return "";
+        String text = pending.toString();
+        pending.setLength(0);
+        return text;
+    }
+
+    /**
+     * Write pending output to the sink (no-op for the GUI printer, which drains on its own timer).
+     */
+    @Override
+    public synchronized void flush() {
+        if (sink == null || pending.length() == 0) return;
+        try {
+            sink.append(pending);
+            sink.flush();
+        } catch (IOException e) {
+            System.err.println("Printer error: " + e.getMessage());
+        }
+        pending.setLength(0);
+    }
+
+    private void afterWrite() {
+        if (sink != null) {
+            if (pending.length() >= SINK_FLUSH_THRESHOLD) flush();
+        } else if (pending.length() > MAX_PENDING) {
+            pending.delete(0, pending.length() - MAX_PENDING);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package src.simulator;
+
+import src.assembler.Encoder;
+import src.assembler.Lexer;
+import src.assembler.Opcode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Guest code coverage: which instruction addresses ran, and for conditional branches (JZ, JNE, JCC, SOB, JGE)
+ * which directions were taken. One bit per address per set, so it is cheap enough to leave on (see
+ * Computer.setCoverage).
+ *
+ * Coverage files hold runs of addresses, one "set first last" line each (octal), and merge by OR, so the runs of
+ * a test suite add up into one file. The report is the listing with each line marked.
+ *
+ * Usage: java src.simulator.Coverage <listing file> <report file> coveragefile...
+ */
+public class Coverage {
+    private static final String EXECUTED = "executed";
+    private static final String TAKEN = "taken";
+    private static final String NOT_TAKEN = "not-taken";
+
+    private final BitSet executed = new BitSet();
+    private final BitSet taken = new BitSet();
+    private final BitSet notTaken = new BitSet();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: java Coverage <listing file> <report file> coveragefile...");
+            System.exit(1);
+        }
+        Coverage coverage = new Coverage();
+        for (int i = 2; i < args.length; i++) {
+            coverage.merge(read(args[i]));
+        }
+        List<String> report = coverage.report(FileIO.readSourceFile(args[0]));
+        FileIO.writeFile(args[1], report);
+        System.out.println(report.get(0));
+        System.out.println("Report file: " + args[1]);
+    }
+
+    void record(Opcode op, int address, int nextPC) {
+        executed.set(address);
+        if (isBranch(op)) {
+            // a branch to the next address is the same path either way, and counts as not taken
+            (nextPC == address + 1 ? notTaken : taken).set(address);
+        }
+    }
+
+    private static boolean isBranch(Opcode op) {
+        return op == Opcode.JZ || op == Opcode.JNE || op == Opcode.JCC || op == Opcode.SOB || op == Opcode.JGE;
+    }
+
+    public boolean isExecuted(int address) {
+        return executed.get(address);
+    }
+
+    public boolean isTaken(int address) {
+        return taken.get(address);
+    }
+
+    public boolean isNotTaken(int address) {
+        return notTaken.get(address);
+    }
+
+    /**
+     * Add another run's coverage to this one.
+     */
+    public void merge(Coverage other) {
+        executed.or(other.executed);
+        taken.or(other.taken);
+        notTaken.or(other.notTaken);
+    }
+
+    /**
+     * @throws IOException if the file can't be read
+     * @throws RuntimeException if a line is not a coverage record
+     */
+    public static Coverage read(String fileName) throws IOException {
+        Coverage coverage = new Coverage();
+        List<String> lines = FileIO.readSourceFile(fileName);
+        for (int n = 0; n < lines.size(); n++) {
+            String[] fields = lines.get(n).trim().split("\\s+");
+            if (fields[0].isEmpty()) continue;
+            try {
+                BitSet set = coverage.set(fields[0]);
+                set.set(Integer.parseInt(fields[1], 8), Integer.parseInt(fields[2], 8) + 1);
+            } catch (RuntimeException e) {
+                throw new RuntimeException(fileName + " line " + (n + 1) + ": not a coverage record", e);
+            }
+        }
+        return coverage;
+    }
+
+    private BitSet set(String name) {
+        switch (name) {
+            case EXECUTED: return executed;
+            case TAKEN: return taken;
+            case NOT_TAKEN: return notTaken;
+            default: throw new IllegalArgumentException(name);
+        }
+    }
+
+    public void write(String fileName) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (String name : new String[] {EXECUTED, TAKEN, NOT_TAKEN}) {
+            BitSet set = set(name);
+            for (int first = set.nextSetBit(0); first >= 0; ) {
+                int end = set.nextClearBit(first);
+                lines.add(name + " " + Encoder.convertToOctal(first, 6) + " " + Encoder.convertToOctal(end - 1, 6));
+                first = set.nextSetBit(end);
+            }
+        }
+        FileIO.writeFile(fileName, lines);
+    }
+
+    /**
+     * Merge this run into a coverage file, creating it if there is none yet.
+     */
+    public void mergeInto(String fileName) throws IOException {
+        Coverage total = new File(fileName).exists() ? read(fileName) : new Coverage();
+        total.merge(this);
+        total.write(fileName);
+    }
+
+    /**
+     * Mark each instruction line of a listing: "#####" never executed; for branches, "T" or "N" when only
+     * the taken or only the not-taken direction ran, "TN" when both did. Data lines are not marked.
+     * @return the summary line, then the marked listing
+     */
+    public List<String> report(List<String> listing) {
+        Lexer lexer = new Lexer();
+        List<String> marked = new ArrayList<>(listing.size() + 1);
+        marked.add(""); // summary, filled in below
+        int lines = 0, executedLines = 0, branches = 0, bothWays = 0, oneWay = 0;
+        for (String line : listing) {
+            int address = Profile.addressOf(line);
+            if (address < 0 || !lexer.tokenize(line.substring(13)) || lexer.mnemonicCode() == Encoder.DATA_DIRECTIVE) {
+                marked.add(String.format("%-6s %s", "", line));
+                continue;
+            }
+            lines++;
+            String mark;
+            if (!executed.get(address)) {
+                mark = "#####";
+            } else {
+                executedLines++;
+                Opcode op = Opcode.of(Opcode.codeOf(Integer.parseInt(line.substring(7, 13), 8)));
+                if (isBranch(op)) {
+                    branches++;
+                    boolean t = taken.get(address), n = notTaken.get(address);
+                    if (t && n) bothWays++; else oneWay++;
+                    mark = (t ? "T" : "") + (n ? "N" : "");
+                } else {
+                    mark = "";
+                }
+            }
+            marked.add(String.format("%-6s %s", mark, line));
+        }
+        marked.set(0, String.format("; %d of %d instructions executed (%.1f%%), %d of %d executed branches went " +
+                        "both ways, %d only one way", executedLines, lines,
+                lines == 0 ? 0.0 : 100.0 * executedLines / lines, bothWays, branches, oneWay));
+        return marked;
+    }
+}
@@ -0,0 +1,93 @@
+package src.simulator;
+
+/**
+ * An I/O device on the DeviceBus. IN, OUT and CHK reach a device through its device id, and a device can
+ * also claim a range of memory addresses (see DeviceBus.map).
+ */
+public interface Device {
+    // read() result when the device has nothing to give yet (the machine should wait)
+    int NO_DATA = -1;
+
+    // CHK status bits
+    int STATUS_READY = 1;  // data available / can accept data
+    int STATUS_EOF = 2;    // input exhausted (tells EOF apart from a null character)
+    int STATUS_ERROR = 4;  // I/O error on the host side
+    int STATUS_INTERRUPT = 8; // device raised an interrupt (cleared by CHK)
+
+    /**
+     * Read one word from the device.
+     * @return the word, or NO_DATA if nothing is available yet
+     */
+    int read();
+
+    /**
+     * Write one word to the device.
+     * @param value the word to write
+     */
+    void write(int value);
+
+    /**
+     * @return device status word for CHK
+     */
+    int status();
+
+    /**
+     * Bulk read: fills the buffer until it is full or the device runs out of data. Devices that can move
+     * a whole block at once should override this.
+     * @return number of words read
+     */
+    default int read(short[] buffer, int offset, int length) {
+        int count = 0;
+        while (count < length) {
+            int value = read();
+            if (value == NO_DATA) break;
+            buffer[offset + count++] = (short) value;
+        }
+        return count;
+    }
+
+    /**
+     * Bulk write of a block of words. Devices that can take a whole block at once should override this.
+     */
+    default void write(short[] buffer, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            write(buffer[offset + i]);
+        }
+    }
+
+    /**
+     * Read a word from a memory-mapped register.
+     * @param offset offset into the range the device claimed
+     */
+    default short readMapped(int offset) {
+        int value = read();
+        return (short) (value == NO_DATA ? 0 : value);
+    }
+
+    /**
+     * Write a word to a memory-mapped register.
+     * @param offset offset into the range the device claimed
+     */
+    default void writeMapped(int offset, short value) {
+        write(value);
+    }
+
+    /**
+     * Called when the device is registered on a bus, so it can do DMA and raise interrupts through it.
+     * @param id the device id it was registered under
+     */
+    default void attach(DeviceBus bus, int id) {
+    }
+
+    /**
+     * Push out any output the device is holding in a buffer.
+     */
+    default void flush() {
+    }
+
+    /**
+     * Release any resources held by the device.
+     */
+    default void close() {
+    }
+}
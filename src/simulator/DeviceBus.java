@@ -0,0 +1,247 @@
+package src.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Connects devices to the machine. Devices register under a device id (port-mapped, used by IN/OUT/CHK) and
+ * can optionally claim a range of memory addresses (memory-mapped, reached through the Cache). Devices can also
+ * move whole blocks in and out of memory by DMA.
+ */
+public class DeviceBus {
+    public static final int MAX_DEVICES = 32; // DEVID is a 5 bit field
+
+    // standard device ids
+    public static final int KEYBOARD = 0;
+    public static final int PRINTER = 1;
+    public static final int CARD_READER = 2;
+
+    private final Cache cache;
+    private final Device[] devices = new Device[MAX_DEVICES];
+    private final List<Mapping> mappings = new ArrayList<>();
+
+    // bit n set when device n has raised an interrupt the guest hasn't acknowledged with CHK yet
+    private volatile int pendingInterrupts;
+
+    // bounds of all mapped ranges, so unmapped addresses cost two compares
+    private int mappedLow = Integer.MAX_VALUE;
+    private int mappedHigh = Integer.MIN_VALUE;
+
+    private static class Mapping {
+        final int base;
+        final int length;
+        final Device device;
+
+        Mapping(int base, int length, Device device) {
+            this.base = base;
+            this.length = length;
+            this.device = device;
+        }
+
+        boolean contains(int address) {
+            return address >= base && address < base + length;
+        }
+    }
+
+    public DeviceBus(Cache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Register a device under a device id, replacing (and closing) any device already there.
+     */
+    public void register(int id, Device device) {
+        checkId(id);
+        if (devices[id] != null && devices[id] != device) {
+            devices[id].close();
+        }
+        devices[id] = device;
+        device.attach(this, id);
+    }
+
+    public Device getDevice(int id) {
+        return (id >= 0 && id < MAX_DEVICES) ? devices[id] : null;
+    }
+
+    /**
+     * Claim a range of memory addresses for a device. Reads and writes in the range go to the device
+     * instead of memory, and are never cached.
+     */
+    public void map(int base, int length, Device device) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("Mapped range must not be empty");
+        }
+        for (Mapping mapping : mappings) {
+            if (base < mapping.base + mapping.length && mapping.base < base + length) {
+                throw new IllegalArgumentException("Mapped range " + base + "+" + length + " overlaps an existing range");
+            }
+        }
+        mappings.add(new Mapping(base, length, device));
+        mappedLow = Math.min(mappedLow, base);
+        mappedHigh = Math.max(mappedHigh, base + length - 1);
+    }
+
+    public boolean isMapped(int address) {
+        return address >= mappedLow && address <= mappedHigh && findMapping(address) != null;
+    }
+
+    /**
+     * Remove a device's mapped ranges.
+     */
+    public void unmap(Device device) {
+        mappings.removeIf(mapping -> mapping.device == device);
+        mappedLow = Integer.MAX_VALUE;
+        mappedHigh = Integer.MIN_VALUE;
+        for (Mapping mapping : mappings) {
+            mappedLow = Math.min(mappedLow, mapping.base);
+            mappedHigh = Math.max(mappedHigh, mapping.base + mapping.length - 1);
+        }
+    }
+
+    /**
+     * @return true if any address in base..base+length-1 is memory-mapped
+     */
+    public boolean isMapped(int base, int length) {
+        if (base > mappedHigh || base + length <= mappedLow) return false;
+        for (Mapping mapping : mappings) {
+            if (base < mapping.base + mapping.length && mapping.base < base + length) return true;
+        }
+        return false;
+    }
+
+    public short readMapped(int address) {
+        Mapping mapping = findMapping(address);
+        return mapping == null ? 0 : mapping.device.readMapped(address - mapping.base);
+    }
+
+    public void writeMapped(int address, short value) {
+        Mapping mapping = findMapping(address);
+        if (mapping != null) {
+            mapping.device.writeMapped(address - mapping.base, value);
+        }
+    }
+
+    /**
+     * Read one word from a device.
+     * @return the word, NO_DATA if the device has nothing yet, or 0 if no device is registered
+     */
+    public int read(int id) {
+        Device device = getDevice(id);
+        return device == null ? 0 : device.read();
+    }
+
+    public void write(int id, int value) {
+        Device device = getDevice(id);
+        if (device != null) {
+            device.write(value);
+        }
+    }
+
+    /**
+     * @return device status for CHK, or 0 if no device is registered. Reading the status acknowledges the
+     * device's pending interrupt.
+     */
+    public int status(int id) {
+        Device device = getDevice(id);
+        if (device == null) return 0;
+        int status = device.status();
+        if ((pendingInterrupts & (1 << id)) != 0) {
+            status |= Device.STATUS_INTERRUPT;
+            clearInterrupt(id);
+        }
+        return status;
+    }
+
+    /**
+     * Raise an interrupt for a device. Safe to call from any thread; the machine checks for pending
+     * interrupts between instructions.
+     */
+    public synchronized void raiseInterrupt(int id) {
+        checkId(id);
+        pendingInterrupts |= 1 << id;
+    }
+
+    public synchronized void clearInterrupt(int id) {
+        pendingInterrupts &= ~(1 << id);
+    }
+
+    /**
+     * @return bit mask of devices with pending interrupts
+     */
+    public int pendingInterrupts() {
+        return pendingInterrupts;
+    }
+
+    public int read(int id, short[] buffer, int offset, int length) {
+        Device device = getDevice(id);
+        return device == null ? 0 : device.read(buffer, offset, length);
+    }
+
+    public void write(int id, short[] buffer, int offset, int length) {
+        Device device = getDevice(id);
+        if (device != null) {
+            device.write(buffer, offset, length);
+        }
+    }
+
+    /**
+     * @return true if address..address+length-1 is all in memory, so a DMA transfer there will succeed
+     */
+    public boolean isDmaRange(int address, int length) {
+        return address >= 0 && length >= 0 && address + length <= cache.getMemory().size();
+    }
+
+    /**
+     * DMA a block of words into memory, bypassing the cache. Cached copies of the block are invalidated.
+     */
+    public void dmaWrite(int address, short[] words, int offset, int length) {
+        cache.getMemory().loadBlock(address, words, offset, length);
+        cache.invalidate(address, length);
+    }
+
+    /**
+     * DMA a block of words out of memory. The cache is write-through, so memory is always current.
+     */
+    public void dmaRead(int address, short[] words, int offset, int length) {
+        cache.getMemory().readBlock(address, words, offset, length);
+    }
+
+    /**
+     * Flush buffered output on all devices.
+     */
+    public void flush() {
+        for (Device device : devices) {
+            if (device != null) device.flush();
+        }
+    }
+
+    /**
+     * Close all devices and remove all mappings.
+     */
+    public void close() {
+        for (int i = 0; i < MAX_DEVICES; i++) {
+            if (devices[i] != null) {
+                devices[i].flush();
+                devices[i].close();
+                devices[i] = null;
+            }
+        }
+        mappings.clear();
+        pendingInterrupts = 0;
+        mappedLow = Integer.MAX_VALUE;
+        mappedHigh = Integer.MIN_VALUE;
+    }
+
+    private Mapping findMapping(int address) {
+        for (Mapping mapping : mappings) {
+            if (mapping.contains(address)) return mapping;
+        }
+        return null;
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= MAX_DEVICES) {
+            throw new IllegalArgumentException("Invalid device id " + id);
+        }
+    }
+}
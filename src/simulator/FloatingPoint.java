@@ -0,0 +1,82 @@
+package src.simulator;
+
+/**
+ * The machine's 16-bit floating point format: sign in bit 15, a 7-bit exponent in bits 14-8 (bit 14 its sign, bits
+ * 13-8 its magnitude) and an 8-bit mantissa in bits 7-0. The value is (-1)^S * M/256 * 2^E with the mantissa
+ * normalized (bit 7 set); zero is all bits 0. Arithmetic is done in double, which holds every value exactly, and
+ * rounded to nearest on the way back.
+ */
+public class FloatingPoint {
+    public static final int MAX_EXPONENT = 63;
+    public static final double MAX_VALUE = 255.0 / 256 * Math.scalb(1.0, MAX_EXPONENT);
+    public static final double MIN_VALUE = 0.5 * Math.scalb(1.0, -MAX_EXPONENT);
+
+    /** Condition code bits set by a conversion */
+    public static final int OVERFLOW = 1;
+    public static final int UNDERFLOW = 2;
+
+    private FloatingPoint() {
+    }
+
+    public static double toDouble(short word) {
+        int mantissa = word & 0xFF;
+        int exponent = (word >> 8) & 0x3F;
+        if ((word & 0x4000) != 0) exponent = -exponent;
+        double value = Math.scalb(mantissa / 256.0, exponent);
+        return word < 0 ? -value : value;
+    }
+
+    /**
+     * Round to the nearest representable value. Too large a magnitude saturates to MAX_VALUE, too small a non-zero
+     * one flushes to zero.
+     */
+    public static short fromDouble(double value) {
+        return (short) round(value);
+    }
+
+    /**
+     * @return OVERFLOW or UNDERFLOW if fromDouble(value) saturates or flushes to zero, otherwise 0
+     */
+    public static int conditionFlags(double value) {
+        return round(value) >>> 16;
+    }
+
+    // the word in the low 16 bits, condition flags above
+    private static int round(double value) {
+        double magnitude = Math.abs(value);
+        if (magnitude == 0 || Double.isNaN(value)) return 0;
+        int exponent = Math.getExponent(magnitude) + 1; // magnitude / 2^exponent in [0.5, 1)
+        int mantissa = (int) Math.rint(Math.scalb(magnitude, 8 - exponent));
+        if (mantissa == 256) {
+            mantissa = 128;
+            exponent++;
+        }
+        int flags = 0;
+        if (exponent > MAX_EXPONENT) {
+            mantissa = 255;
+            exponent = MAX_EXPONENT;
+            flags = OVERFLOW;
+        } else if (exponent < -MAX_EXPONENT) {
+            return UNDERFLOW << 16;
+        }
+        int bits = (exponent < 0 ? 0x4000 | (-exponent << 8) : exponent << 8) | mantissa;
+        return flags << 16 | (value < 0 ? bits | 0x8000 : bits);
+    }
+
+    /**
+     * Fixed point to floating point. Every 16-bit integer fits in range, rounded to 8 significant bits.
+     */
+    public static short fromFixed(short value) {
+        return fromDouble(value);
+    }
+
+    /**
+     * Floating point to fixed point, truncating toward zero and saturating to the 16-bit range.
+     */
+    public static short toFixed(short word) {
+        double value = toDouble(word);
+        if (value > Short.MAX_VALUE) return Short.MAX_VALUE;
+        if (value < Short.MIN_VALUE) return Short.MIN_VALUE;
+        return (short) (long) value;
+    }
+}
@@ -0,0 +1,190 @@
+package src.simulator;
+
+import src.assembler.Encoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+public class FloatingPointTest {
+
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) {
+        System.out.println("===  Floating Point and Vector Testing ===\n");
+        Trace.enabled = false;
+
+        testConversions();
+        testRounding();
+        testSaturation();
+        testFixedPoint();
+        testInstructions();
+        testVectors();
+
+        System.out.println("\n=== Test Results ===");
+        System.out.println("Tests Passed: " + testsPassed);
+        System.out.println("Tests Failed: " + testsFailed);
+        System.out.println("Total Tests: " + (testsPassed + testsFailed));
+
+        if (testsFailed == 0) {
+            System.out.println("*** ALL TESTS PASSED! ***");
+        } else {
+            System.out.println("*** " + testsFailed + " tests failed. ***");
+        }
+    }
+
+    private static void testConversions() {
+        System.out.println("--- Testing Conversions ---");
+
+        assertWord(FloatingPoint.fromDouble(0), 0, "zero is all bits 0");
+        assertWord(FloatingPoint.fromDouble(1), 0x0180, "1 = 128/256 * 2^1");
+        assertWord(FloatingPoint.fromDouble(-1), 0x8180, "-1 has the sign bit");
+        assertWord(FloatingPoint.fromDouble(0.25), 0x4180, "0.25 has a negative exponent");
+        assertValue(FloatingPoint.toDouble((short) 0x0180), 1, "1 back");
+        assertValue(FloatingPoint.toDouble((short) 0x4180), 0.25, "0.25 back");
+
+        // every normalized word converts back to itself
+        int mismatches = 0;
+        for (int w = 0; w < 1 << 16; w++) {
+            short word = (short) w;
+            boolean negativeZeroExponent = (w & 0x7F00) == 0x4000;
+            if ((w & 0x80) == 0 || negativeZeroExponent) continue;
+            if (FloatingPoint.fromDouble(FloatingPoint.toDouble(word)) != word) mismatches++;
+        }
+        assertTrue(mismatches == 0, "all normalized words round-trip (" + mismatches + " mismatches)");
+    }
+
+    private static void testRounding() {
+        System.out.println("\n--- Testing Rounding ---");
+
+        // 8 significant bits: 257 lies halfway between 256 and 258, 259 between 258 and 260
+        assertValue(FloatingPoint.toDouble(FloatingPoint.fromDouble(257)), 256, "half rounds to even (down)");
+        assertValue(FloatingPoint.toDouble(FloatingPoint.fromDouble(259)), 260, "half rounds to even (up)");
+        assertValue(FloatingPoint.toDouble(FloatingPoint.fromDouble(1.0 / 3)), 171.0 / 512, "1/3 to nearest");
+        assertValue(FloatingPoint.toDouble(FloatingPoint.fromDouble(511)), 512, "mantissa carry renormalizes");
+        assertTrue(FloatingPoint.conditionFlags(511) == 0, "rounding alone sets no flag");
+    }
+
+    private static void testSaturation() {
+        System.out.println("\n--- Testing Overflow and Underflow ---");
+
+        assertValue(FloatingPoint.toDouble(FloatingPoint.fromDouble(1e30)), FloatingPoint.MAX_VALUE,
+                "overflow saturates");
+        assertValue(FloatingPoint.toDouble(FloatingPoint.fromDouble(-1e30)), -FloatingPoint.MAX_VALUE,
+                "negative overflow saturates");
+        assertTrue(FloatingPoint.conditionFlags(1e30) == FloatingPoint.OVERFLOW, "overflow flag");
+        assertTrue(FloatingPoint.conditionFlags(FloatingPoint.MAX_VALUE) == 0, "MAX_VALUE itself fits");
+        assertWord(FloatingPoint.fromDouble(1e-30), 0, "underflow flushes to zero");
+        assertTrue(FloatingPoint.conditionFlags(1e-30) == FloatingPoint.UNDERFLOW, "underflow flag");
+        assertTrue(FloatingPoint.conditionFlags(FloatingPoint.MIN_VALUE) == 0, "MIN_VALUE itself fits");
+    }
+
+    private static void testFixedPoint() {
+        System.out.println("\n--- Testing Fixed Point ---");
+
+        assertTrue(FloatingPoint.toFixed(FloatingPoint.fromFixed((short) 100)) == 100, "100 exactly");
+        assertTrue(FloatingPoint.toFixed(FloatingPoint.fromFixed((short) -300)) == -300, "-300 exactly");
+        assertTrue(FloatingPoint.toFixed(FloatingPoint.fromDouble(2.75)) == 2, "truncates toward zero");
+        assertTrue(FloatingPoint.toFixed(FloatingPoint.fromDouble(-2.75)) == -2, "negative truncates toward zero");
+        assertTrue(FloatingPoint.toFixed(FloatingPoint.fromDouble(1e10)) == Short.MAX_VALUE, "saturates high");
+        assertTrue(FloatingPoint.toFixed(FloatingPoint.fromDouble(-1e10)) == Short.MIN_VALUE, "saturates low");
+    }
+
+    private static void testInstructions() {
+        System.out.println("\n--- Testing Instructions ---");
+
+        Computer computer = new Computer();
+        computer.patchMemory(20, FloatingPoint.fromDouble(1.5));
+        computer.patchMemory(21, FloatingPoint.fromDouble(2.25));
+        computer.patchMemory(23, (short) 1);
+        computer.patchMemory(24, (short) 1000);
+        computer.patchMemory(25, (short) 0);
+        computer.patchMemory(26, FloatingPoint.fromDouble(1e18));
+        run(computer, "LDFR 0,0,20", "FADD 0,0,21", "STFR 0,0,22", "LDR 1,0,23", "CNVRT 1,0,24",
+                "LDR 2,0,25", "CNVRT 2,0,22", "LDFR 1,0,26", "FSUB 1,0,21", "HLT");
+        assertValue(FloatingPoint.toDouble(computer.cache.getMemory().read(22)), 3.75, "LDFR, FADD, STFR");
+        assertValue(FloatingPoint.toDouble(computer.cpu.FR[0]), 1000, "CNVRT to floating point into FR0");
+        assertTrue(computer.cpu.R[2] == 3, "CNVRT to fixed point truncates");
+        assertValue(FloatingPoint.toDouble(computer.cpu.FR[1]), FloatingPoint.toDouble(FloatingPoint.fromDouble(1e18)),
+                "FSUB of a much smaller value");
+
+        Computer overflow = new Computer();
+        overflow.patchMemory(20, FloatingPoint.fromDouble(FloatingPoint.MAX_VALUE));
+        run(overflow, "LDFR 0,0,20", "FADD 0,0,20", "HLT");
+        assertTrue((overflow.cpu.CC & FloatingPoint.OVERFLOW) != 0, "FADD overflow sets CC bit 0");
+    }
+
+    private static void testVectors() {
+        System.out.println("\n--- Testing Vectors (bulk and element-wise) ---");
+
+        // {V1, V2, length}: bulk unless short or V1 starts inside V2 after it
+        int[][] cases = {
+                {100, 200, 20}, {100, 200, 5}, {100, 103, 40}, {103, 100, 40}, {100, 100, 30}, {300, 320, 200},
+                {101, 100, 16}, {100, 115, 16}};
+        SplittableRandom random = new SplittableRandom(1);
+        for (int[] v : cases) {
+            for (boolean subtract : new boolean[] {false, true}) {
+                Computer computer = new Computer();
+                short[] expected = new short[computer.cache.getMemory().size()];
+                for (int a = 64; a < expected.length; a++) {
+                    expected[a] = (short) random.nextInt(1 << 16);
+                    computer.patchMemory(a, expected[a]);
+                }
+                computer.patchMemory(30, (short) v[0]);
+                computer.patchMemory(31, (short) v[1]);
+                computer.patchMemory(29, FloatingPoint.fromFixed((short) v[2]));
+                List<Integer> writes = new ArrayList<>();
+                computer.cache.setWriteListener(writes::add);
+                run(computer, "LDFR 1,0,29", (subtract ? "VSUB" : "VADD") + " 1,0,30", "HLT");
+
+                // element by element, each element seeing the writes before it
+                List<Integer> expectedWrites = new ArrayList<>();
+                for (int i = 0; i < v[2]; i++) {
+                    int a = v[0] + i, b = v[1] + i;
+                    expected[a] = (short) (subtract ? expected[a] - expected[b] : expected[a] + expected[b]);
+                    expectedWrites.add(a << 16 | (expected[a] & 0xFFFF));
+                }
+                String name = (subtract ? "VSUB" : "VADD") + " V1=" + v[0] + " V2=" + v[1] + " n=" + v[2];
+                boolean memoryMatches = true, cacheMatches = true;
+                for (int a = 64; a < expected.length; a++) {
+                    memoryMatches &= computer.cache.getMemory().read(a) == expected[a];
+                }
+                for (int a = v[0]; a < v[0] + v[2]; a++) {
+                    cacheMatches &= computer.cache.read(a) == expected[a];
+                }
+                assertTrue(memoryMatches && cacheMatches && writes.equals(expectedWrites),
+                        name + " matches element-wise");
+            }
+        }
+    }
+
+    private static void run(Computer computer, String... program) {
+        for (int i = 0; i < program.length; i++) {
+            computer.patchMemory(6 + i, (short) Encoder.encodeWord(program[i]));
+        }
+        computer.cpu.PC = 6;
+        for (int n = 0; n < 100 && !computer.isHalted(); n++) {
+            computer.singleStep();
+        }
+    }
+
+    private static void assertWord(short actual, int expected, String description) {
+        assertTrue((actual & 0xFFFF) == expected,
+                description + String.format(" (expected %06o, actual %06o)", expected, actual & 0xFFFF));
+    }
+
+    private static void assertValue(double actual, double expected, String description) {
+        assertTrue(actual == expected, description + " (expected " + expected + ", actual " + actual + ")");
+    }
+
+    private static void assertTrue(boolean passed, String description) {
+        if (passed) {
+            System.out.println("PASS: " + description);
+            testsPassed++;
+        } else {
+            System.out.println("FAIL: " + description);
+            testsFailed++;
+        }
+    }
+}
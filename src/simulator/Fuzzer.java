@@ -0,0 +1,395 @@
+package src.simulator;
+
+import src.assembler.Disassembler;
+import src.assembler.Encoder;
+import src.assembler.Opcode;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs random programs on the simulator, on all cores, and checks that:
+ *  - the simulator never throws (faults, halts and waiting for input are fine),
+ *  - two runs of the same case end in the same state, output and counts,
+ *  - every instruction word round-trips: Disassembler.text assembles back to the word with Encoder.
+ *
+ * Each case is made from (seed, case number) alone, so any case can be replayed with --replay. Half the cases are
+ * a valid program (random instructions with operands in range) with page zero pointing into it and into memory,
+ * half a random memory image. Most cases install a fault handler that carries on past the faulting instruction
+ * or restarts the program; registers, FR0-FR1 included, start at random values biased towards 0, 1, -1 and the extremes, to reach
+ * divide by zero, overflow and large shift counts. A case runs for at most --budget instructions. Failing cases are minimized
+ * (shortest budget, then as many words and registers zeroed as still fail) and written to --out as a load file
+ * plus a description with the disassembly.
+ *
+ * Usage: java src.simulator.Fuzzer [--threads n] [--cases n] [--seed n] [--budget n] [--out dir]
+ *        [--replay case]
+ */
+public class Fuzzer {
+    private static final int MEMORY_SIZE = 2048;
+    private static final int REGISTERS = 9; // R0-R3, X1-X3, FR0-FR1
+    private static final int MAX_PROGRAM = 64;
+    private static final int MAX_SAVED_FAILURES = 10;
+    private static final List<String> INPUT = List.of("7", "-1", "hello", "32767");
+    private static final int RESERVED_WORDS = 6;
+    // fault handlers: carry on after the faulting instruction, or start the program again (from the address in
+    // RESTART_WORD, R0 lost); JMA 0,4,1 returns from the fault and restores MSR
+    private static final int RESTART_WORD = 31;
+    private static final String[] RESUME_HANDLER = {"JMA 0,4,1"};
+    private static final String[] RESTART_HANDLER = {"LDR 0,0," + RESTART_WORD, "STR 0,0,4", "JMA 0,4,1"};
+    private static final short[] INTERESTING = {0, 1, -1, 2, 31, 32, 32767, -32768, 15, 16};
+
+    // words whose round trip has passed; a word's round trip never changes, so each is checked once per JVM
+    private static final boolean[] ROUND_TRIPPED = new boolean[1 << 16];
+
+    /**
+     * One generated case: the whole memory image, the starting registers and PC.
+     */
+    static class Case {
+        final long number;
+        final short[] memory;
+        final short[] registers;
+        final int start;
+        int budget;
+
+        Case(long number, short[] memory, short[] registers, int start, int budget) {
+            this.number = number;
+            this.memory = memory;
+            this.registers = registers;
+            this.start = start;
+            this.budget = budget;
+        }
+
+        Case copy() {
+            return new Case(number, memory.clone(), registers.clone(), start, budget);
+        }
+    }
+
+    private final long seed;
+    private final int budget;
+    private final AtomicLong instructions = new AtomicLong();
+
+    public Fuzzer(long seed, int budget) {
+        this.seed = seed;
+        this.budget = budget;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        long cases = 100_000;
+        long seed = 1;
+        int budget = 1000;
+        String outDir = "data/fuzz";
+        long replay = -1;
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 >= args.length) usage();
+            switch (args[i]) {
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--cases": cases = Long.parseLong(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--budget": budget = Integer.parseInt(args[++i]); break;
+                case "--out": outDir = args[++i]; break;
+                case "--replay": replay = Long.parseLong(args[++i]); break;
+                default: usage();
+            }
+        }
+        if (threads < 1 || budget < 1) usage();
+
+        // device messages are trace output too, so stdout carries only the report
+        Trace.enabled = false;
+        Fuzzer fuzzer = new Fuzzer(seed, budget);
+        if (replay >= 0) {
+            Case c = fuzzer.generate(replay);
+            String failure = fuzzer.check(c);
+            System.out.println("Case " + replay + ": " + (failure == null ? "ok, " + digest(c).summary : failure));
+            fuzzer.describe(c, failure).forEach(System.out::println);
+            return;
+        }
+        fuzzer.run(cases, threads, outDir, System.out);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java Fuzzer [--threads n] [--cases n] [--seed n] [--budget n] [--out dir] " +
+                "[--replay case]");
+        System.exit(1);
+    }
+
+    /**
+     * Check cases 0 to cases-1 on a pool of threads, minimizing and saving the first failures.
+     */
+    void run(long cases, int threads, String outDir, PrintStream report) throws Exception {
+        AtomicLong next = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+        List<String> saved = new CopyOnWriteArrayList<>();
+        long started = System.nanoTime();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(pool.submit(() -> {
+                    long n;
+                    while ((n = next.getAndIncrement()) < cases) {
+                        Case c = generate(n);
+                        String failure = check(c);
+                        if (failure == null) continue;
+                        failures.incrementAndGet();
+                        if (saved.size() < MAX_SAVED_FAILURES) {
+                            saved.add(save(minimize(c, failure), failure, outDir));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+        report.printf("%,d cases, %,d instructions in %.1f s (%,.0f cases/hour), seed %d, budget %d: %,d failures%n",
+                cases, instructions.get(), seconds, cases / seconds * 3600, seed, budget, failures.get());
+        saved.forEach(report::println);
+    }
+
+    /**
+     * Make case n from the seed.
+     */
+    Case generate(long n) {
+        SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + n);
+        short[] memory = new short[MEMORY_SIZE];
+        int start;
+        int handler;
+        boolean restart = false;
+        if (random.nextBoolean()) {
+            // a valid program, with the fault handler just before it
+            int length = 1 + random.nextInt(MAX_PROGRAM);
+            start = 32 + RESTART_HANDLER.length + random.nextInt(MEMORY_SIZE - 32 - RESTART_HANDLER.length - length);
+            for (int i = 0; i < length; i++) {
+                memory[start + i] = (short) randomInstruction(random);
+            }
+            // page zero, where the address field reaches: mostly pointers into the program (jump targets, and
+            // loops) or elsewhere in memory (data), so direct and indirect accesses stay in range
+            for (int a = RESERVED_WORDS; a < 32; a++) {
+                int kind = random.nextInt(4);
+                memory[a] = kind < 2 ? (short) (start + random.nextInt(length))
+                        : kind == 2 ? (short) random.nextInt(MEMORY_SIZE) : randomValue(random);
+            }
+            // half the programs restart after a fault: a fault on fetching from a bad PC would only repeat
+            restart = random.nextBoolean();
+            handler = start - (restart ? RESTART_HANDLER.length : 1);
+            if (restart) memory[RESTART_WORD] = (short) start;
+        } else {
+            for (int a = 0; a < MEMORY_SIZE; a++) {
+                memory[a] = random.nextBoolean() ? (short) randomInstruction(random) : (short) random.nextInt(1 << 16);
+            }
+            start = random.nextInt(MEMORY_SIZE);
+            Arrays.fill(memory, 2, RESERVED_WORDS, (short) 0);
+            // random jumps mostly leave memory, so always restart
+            restart = true;
+            handler = 32 + random.nextInt(MEMORY_SIZE - 32 - RESTART_HANDLER.length);
+            memory[RESTART_WORD] = (short) start;
+        }
+        memory[0] = 0; // no trap table: TRAP is an illegal trap fault
+        memory[1] = 0;
+        if (random.nextInt(4) != 0) {
+            String[] code = restart ? RESTART_HANDLER : RESUME_HANDLER;
+            for (int i = 0; i < code.length; i++) {
+                memory[handler + i] = (short) Encoder.encodeWord(code[i]);
+            }
+            memory[1] = (short) handler;
+        }
+        short[] registers = new short[REGISTERS];
+        for (int r = 0; r < REGISTERS; r++) registers[r] = randomValue(random);
+        for (int x = 4; x < 7; x++) {
+            // mostly inside memory, or nearly every indexed access is an address fault
+            if (random.nextInt(4) != 0) registers[x] = (short) random.nextInt(MEMORY_SIZE);
+        }
+        for (int fr = 7; fr < REGISTERS; fr++) {
+            // mostly well-formed floating point values, so FADD/FSUB/VADD see real magnitudes and lengths
+            if (random.nextInt(4) != 0) registers[fr] = FloatingPoint.fromFixed(randomValue(random));
+        }
+        return new Case(n, memory, registers, start, budget);
+    }
+
+    private static short randomValue(SplittableRandom random) {
+        return random.nextInt(4) == 0 ? (short) random.nextInt(1 << 16)
+                : INTERESTING[random.nextInt(INTERESTING.length)];
+    }
+
+    private static int randomInstruction(SplittableRandom random) {
+        Opcode[] ops = Opcode.values();
+        Opcode op = ops[random.nextInt(ops.length)];
+        int[] operands = new int[op.format.operandCount()];
+        for (int i = 0; i < operands.length; i++) {
+            operands[i] = random.nextInt(op.format.operand(i).mask + 1);
+        }
+        return op.encode(operands, operands.length);
+    }
+
+    /**
+     * @return null if the case passes, otherwise what failed
+     */
+    String check(Case c) {
+        for (int i = 0; i < c.memory.length; i++) {
+            int word = c.memory[i] & 0xFFFF;
+            if (ROUND_TRIPPED[word] || !Disassembler.isInstruction(word)) continue;
+            String text = Disassembler.text(word);
+            int encoded;
+            try {
+                encoded = Encoder.encodeWord(text) & 0xFFFF;
+            } catch (RuntimeException e) {
+                return "round trip: " + text + " does not assemble: " + e.getMessage();
+            }
+            if (encoded != word) {
+                return String.format("round trip: %06o disassembles to %s, which assembles to %06o", word, text,
+                        encoded);
+            }
+            ROUND_TRIPPED[word] = true;
+        }
+
+        Outcome first = digest(c);
+        instructions.addAndGet(first.instructions);
+        if (first.exception != null) return "exception: " + first.exception;
+        Outcome second = digest(c);
+        if (!first.summary.equals(second.summary) || first.hash != second.hash) {
+            return "nondeterministic: " + first.summary + " then " + second.summary;
+        }
+        return null;
+    }
+
+    /**
+     * End state of one run of a case.
+     */
+    static class Outcome {
+        String exception;
+        String summary;
+        long hash;
+        long instructions;
+    }
+
+    static Outcome digest(Case c) {
+        Outcome outcome = new Outcome();
+        Computer computer = new Computer(MEMORY_SIZE);
+        StringWriter printed = new StringWriter();
+        computer.setPrinterOutput(printed);
+        computer.setInputSource(new ScriptInputSource(INPUT));
+        computer.cache.getMemory().loadBlock(0, c.memory, 0, c.memory.length);
+        System.arraycopy(c.registers, 0, computer.cpu.R, 0, 4);
+        System.arraycopy(c.registers, 4, computer.cpu.IX, 1, 3);
+        System.arraycopy(c.registers, 7, computer.cpu.FR, 0, 2);
+        computer.cpu.PC = (short) c.start;
+        try {
+            for (int i = 0; i < c.budget && !computer.isHalted() && !computer.isWaitingForInput(); i++) {
+                computer.singleStep();
+            }
+            computer.bus.flush();
+        } catch (Throwable t) {
+            StackTraceElement[] frames = t.getStackTrace();
+            outcome.exception = t + (frames.length > 0 ? " at " + frames[0] : "") + " after " +
+                    computer.getInstructionCount() + " instructions";
+            return outcome;
+        }
+
+        CPU cpu = computer.cpu;
+        outcome.instructions = computer.getInstructionCount();
+        long hash = 0xCBF29CE484222325L;
+        short[] memory = new short[MEMORY_SIZE];
+        computer.cache.getMemory().readBlock(0, memory, 0, MEMORY_SIZE);
+        for (short word : memory) hash = (hash ^ word) * 0x100000001B3L;
+        for (char ch : printed.toString().toCharArray()) hash = (hash ^ ch) * 0x100000001B3L;
+        outcome.hash = hash;
+        outcome.summary = String.format("%s after %d instructions, %d cycles, PC=%06o R=%d,%d,%d,%d X=%d,%d,%d " +
+                        "FR=%06o,%06o CC=%d MSR=%d MFR=%d", computer.getState(), computer.getInstructionCount(),
+                computer.getCycleCount(), cpu.PC & 0xFFFF, cpu.R[0], cpu.R[1], cpu.R[2], cpu.R[3], cpu.IX[1],
+                cpu.IX[2], cpu.IX[3], cpu.FR[0] & 0xFFFF, cpu.FR[1] & 0xFFFF, cpu.CC, cpu.MSR, cpu.MFR);
+        return outcome;
+    }
+
+    /**
+     * Shrink a failing case: the smallest budget that still fails, then zero words and registers, halving chunk
+     * sizes down to single words, as long as the case fails the same way.
+     */
+    Case minimize(Case failing, String failure) {
+        String kind = kindOf(failure);
+        Case c = failing.copy();
+
+        int low = 1, high = c.budget;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            c.budget = mid;
+            if (kind.equals(kindOf(check(c)))) high = mid; else low = mid + 1;
+        }
+        c.budget = high;
+
+        for (short[] values : new short[][] {c.memory, c.registers}) {
+            for (int chunk = Integer.highestOneBit(values.length); chunk >= 1; chunk /= 2) {
+                for (int from = 0; from < values.length; from += chunk) {
+                    int to = Math.min(values.length, from + chunk);
+                    short[] saved = Arrays.copyOfRange(values, from, to);
+                    boolean nonzero = false;
+                    for (short v : saved) nonzero |= v != 0;
+                    if (!nonzero) continue;
+                    Arrays.fill(values, from, to, (short) 0);
+                    if (!kind.equals(kindOf(check(c)))) {
+                        System.arraycopy(saved, 0, values, from, saved.length);
+                    }
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * @return the failure up to the first colon, plus the exception class for exceptions
+     */
+    private static String kindOf(String failure) {
+        if (failure == null) return "";
+        if (failure.startsWith("exception: ")) {
+            int end = failure.indexOf(' ', "exception: ".length());
+            return end < 0 ? failure : failure.substring(0, end);
+        }
+        return failure.substring(0, failure.indexOf(':'));
+    }
+
+    private String save(Case c, String failure, String outDir) throws IOException {
+        Files.createDirectories(Paths.get(outDir));
+        String base = outDir + "/case-" + seed + "-" + c.number;
+        List<String> load = new ArrayList<>();
+        for (int a = 0; a < c.memory.length; a++) {
+            if (c.memory[a] != 0) {
+                load.add(Encoder.convertToOctal(a, 6) + " " + Encoder.convertToOctal(c.memory[a] & 0xFFFF, 6));
+            }
+        }
+        FileIO.writeFile(base + ".load", load);
+        FileIO.writeFile(base + ".txt", describe(c, check(c)));
+        return "case " + c.number + ": " + failure + " -> " + base + ".txt";
+    }
+
+    List<String> describe(Case c, String failure) {
+        List<String> lines = new ArrayList<>();
+        lines.add("; case " + c.number + ", seed " + seed + ": " + (failure == null ? "passes" : failure));
+        lines.add(String.format("; start %06o, budget %d, R=%d,%d,%d,%d X=%d,%d,%d FR=%06o,%06o", c.start, c.budget,
+                c.registers[0], c.registers[1], c.registers[2], c.registers[3], c.registers[4], c.registers[5],
+                c.registers[6], c.registers[7] & 0xFFFF, c.registers[8] & 0xFFFF));
+        int[] addresses = new int[c.memory.length];
+        short[] words = new short[c.memory.length];
+        int count = 0;
+        for (int a = 0; a < c.memory.length; a++) {
+            if (c.memory[a] != 0 || a == c.start) {
+                addresses[count] = a;
+                words[count++] = c.memory[a];
+            }
+        }
+        lines.addAll(Disassembler.listing(addresses, words, count));
+        return lines;
+    }
+}
@@ -0,0 +1,193 @@
+package src.simulator;
+
+import src.assembler.Disassembler;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Golden-trace regression check. A rolling 64-bit hash folds in the architectural state after every instruction
+ * (PC, R0-R3, X1-X3, FR0-FR1, CC) and every memory write. A reference run records the hash every `interval` instructions;
+ * a later run checks its hashes against the recording as it goes and stops at the first checkpoint that differs.
+ *
+ * Only the last window of instructions is kept in full, in a ring buffer, and written out on a divergence, so a
+ * check costs a few multiplies per instruction however long the recording is.
+ *
+ * Recording format (big-endian): magic "GOLD", interval, then one long per checkpoint, and finally the total
+ * instruction count and the hash at the end of the run.
+ */
+public class GoldenTrace {
+    public static final int MAGIC = 0x474F4C44; // "GOLD"
+    public static final int DEFAULT_INTERVAL = 1000;
+    private static final int MAX_WINDOW = 65536;
+    private static final int RECORD_SHORTS = 12; // address, IR, R0-R3, X1-X3, FR0-FR1, CC
+    private static final long PRIME = 0x100000001B3L;
+
+    private final int interval;
+    private final long[] expected;   // checkpoints to check against, null when recording
+    private final DataOutputStream out; // recording, null when checking
+    private long expectedCount;
+    private long expectedFinal;
+
+    private long hash = 0xCBF29CE484222325L;
+    private long count;
+    private int checkpoint;
+    private long divergedAt = -1;
+
+    private final short[] ring;
+    private final int window;
+
+    private GoldenTrace(int interval, long[] expected, DataOutputStream out) {
+        this.interval = interval;
+        this.expected = expected;
+        this.out = out;
+        window = Math.min(interval, MAX_WINDOW);
+        ring = new short[window * RECORD_SHORTS];
+    }
+
+    /**
+     * Start recording a reference run.
+     * @param interval instructions between checkpoints
+     */
+    public static GoldenTrace record(String fileName, int interval) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+        out.writeInt(MAGIC);
+        out.writeInt(interval);
+        return new GoldenTrace(interval, null, out);
+    }
+
+    /**
+     * Start checking a run against a recording.
+     * @throws IOException if the file can't be read or is not a recording
+     */
+    public static GoldenTrace check(String fileName) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(fileName)));
+        if (buffer.remaining() < 24 || buffer.remaining() % 8 != 0 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a golden trace: " + fileName);
+        }
+        int interval = buffer.getInt();
+        long[] expected = new long[buffer.remaining() / 8 - 2];
+        buffer.asLongBuffer().get(expected);
+        buffer.position(buffer.position() + expected.length * 8);
+        GoldenTrace trace = new GoldenTrace(interval, expected, null);
+        trace.expectedCount = buffer.getLong();
+        trace.expectedFinal = buffer.getLong();
+        return trace;
+    }
+
+    /**
+     * Fold in a memory write, as passed to a Cache write listener.
+     */
+    void write(int addressAndValue) {
+        hash = (hash ^ addressAndValue) * PRIME;
+    }
+
+    /**
+     * Fold in the state after an instruction, and check or record a checkpoint every interval instructions.
+     * @param address where the instruction was fetched from
+     * @return false once the run has diverged from the recording
+     */
+    boolean record(CPU cpu, int address) {
+        int slot = (int) (count % window) * RECORD_SHORTS;
+        ring[slot] = (short) address;
+        ring[slot + 1] = cpu.IR;
+        System.arraycopy(cpu.R, 0, ring, slot + 2, 4);
+        System.arraycopy(cpu.IX, 1, ring, slot + 6, 3);
+        System.arraycopy(cpu.FR, 0, ring, slot + 9, 2);
+        ring[slot + 11] = cpu.CC;
+        hash = (hash ^ cpu.PC) * PRIME;
+        for (int i = 1; i < RECORD_SHORTS; i++) {
+            hash = (hash ^ ring[slot + i]) * PRIME;
+        }
+        count++;
+
+        if (divergedAt >= 0) return false;
+        if (count % interval != 0) return true;
+        if (expected == null) {
+            try {
+                out.writeLong(hash);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        }
+        if (checkpoint >= expected.length || expected[checkpoint] != hash) {
+            divergedAt = count;
+            return false;
+        }
+        checkpoint++;
+        return true;
+    }
+
+    /**
+     * End of the run: finish the recording, or check the run's length and final state against it.
+     * @return false if the run diverged from the recording
+     */
+    public boolean finish() throws IOException {
+        if (expected == null) {
+            out.writeLong(count);
+            out.writeLong(hash);
+            out.close();
+            return true;
+        }
+        if (divergedAt < 0 && (count != expectedCount || hash != expectedFinal)) {
+            divergedAt = count;
+        }
+        return divergedAt < 0;
+    }
+
+    public long getInstructionCount() {
+        return count;
+    }
+
+    /**
+     * @return the instruction (counting from 1) at which the first differing checkpoint was taken, or -1
+     */
+    public long getDivergedAt() {
+        return divergedAt;
+    }
+
+    /**
+     * @return the first instruction after the last matching checkpoint; the divergence is at or after it
+     */
+    public long getLastMatch() {
+        return (long) checkpoint * interval + 1;
+    }
+
+    public String describe() {
+        if (expected == null) {
+            return "Recorded " + count + " instructions, " + count / interval + " checkpoints every " + interval;
+        }
+        if (divergedAt < 0) {
+            return "Matched the golden trace: " + count + " instructions, " + checkpoint + " checkpoints";
+        }
+        if (divergedAt == count && count != expectedCount && checkpoint >= expected.length) {
+            return "Diverged: ran " + count + " instructions, the golden run " + expectedCount;
+        }
+        return "Diverged in instructions " + getLastMatch() + "-" + divergedAt;
+    }
+
+    /**
+     * The last instructions in full: instruction number, address, the instruction and the state after it.
+     */
+    public List<String> window() {
+        List<String> lines = new ArrayList<>(window + 1);
+        lines.add("; instr   addr   IR     instruction          R0     R1     R2     R3     X1     X2     X3     FR0    FR1    CC");
+        long first = Math.max(0, count - window);
+        for (long n = first; n < count; n++) {
+            int slot = (int) (n % window) * RECORD_SHORTS;
+            StringBuilder line = new StringBuilder(96);
+            line.append(String.format("%8d %06o %06o %-20s", n + 1, ring[slot] & 0xFFFF, ring[slot + 1] & 0xFFFF,
+                    Disassembler.text(ring[slot + 1])));
+            for (int i = 2; i < RECORD_SHORTS; i++) {
+                line.append(String.format(" %06o", ring[slot + i] & 0xFFFF));
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+}
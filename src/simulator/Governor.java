@@ -0,0 +1,90 @@
+package src.simulator;
+
+/**
+ * Paces a run to a target rate: a fixed number of instructions per second, or a simulated clock frequency
+ * (cycles per second, using Computer's per-opcode cycle costs). The machine runs in batches of about
+ * BATCH_MILLIS worth of work and asks for the delay after each batch, so the pacing costs one check per batch.
+ * Delays are computed against the start of the run, so pacing doesn't drift.
+ *
+ * An unlimited run has no Governor at all (Computer.setGovernor(null)), so it stays out of the hot path.
+ */
+public class Governor {
+    public enum Mode { IPS, CLOCK_HZ }
+
+    private static final int BATCH_MILLIS = 10;
+    // if the machine falls this far behind (e.g. after waiting for input), pacing restarts from now instead of
+    // racing to catch up
+    private static final long MAX_LAG_NANOS = 100_000_000L;
+
+    private final Mode mode;
+    private final long rate;
+    private final int batchSize;
+
+    private long startNanos;
+    private long startProgress;
+
+    private Governor(Mode mode, long rate) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Rate must be positive: " + rate);
+        }
+        this.mode = mode;
+        this.rate = rate;
+        // instructions per batch; at a clock rate assume about 2 cycles per instruction
+        long perBatch = rate * BATCH_MILLIS / 1000 / (mode == Mode.CLOCK_HZ ? 2 : 1);
+        this.batchSize = (int) Math.max(1, Math.min(perBatch, 1_000_000));
+    }
+
+    public static Governor instructionsPerSecond(long ips) {
+        return new Governor(Mode.IPS, ips);
+    }
+
+    public static Governor clockHz(long hz) {
+        return new Governor(Mode.CLOCK_HZ, hz);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public long getRate() {
+        return rate;
+    }
+
+    /**
+     * @return instructions to run between calls to delayNanos
+     */
+    public int batchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Start pacing from the machine's current counters.
+     */
+    public void start(long instructions, long cycles) {
+        startNanos = System.nanoTime();
+        startProgress = progress(instructions, cycles);
+    }
+
+    /**
+     * @return how long to sleep before the next batch, 0 if the run is on or behind schedule
+     */
+    public long delayNanos(long instructions, long cycles) {
+        long done = progress(instructions, cycles) - startProgress;
+        long due = startNanos + (long) (done * 1e9 / rate);
+        long delay = due - System.nanoTime();
+        if (delay < -MAX_LAG_NANOS) {
+            start(instructions, cycles);
+            return 0;
+        }
+        return Math.max(0, delay);
+    }
+
+    private long progress(long instructions, long cycles) {
+        return mode == Mode.IPS ? instructions : cycles;
+    }
+
+    @Override
+    public String toString() {
+        return mode == Mode.IPS ? rate + " IPS" : rate + " Hz";
+    }
+}
@@ -0,0 +1,206 @@
+package src.simulator;
+
+import src.assembler.AssemblyResult;
+
+import java.io.*;
+
+/**
+ * Runs a program without the GUI. Printer output goes to stdout (or --out file), and the simulator's trace
+ * output, which normally goes to stdout, goes to --log file or is discarded.
+ *
+ * --card-dma maps the card reader's DMA control block (see CardReader) at an octal address.
+ *
+ * Console input comes from --input (a script, see ScriptInputSource) or --stdin, and can be captured with
+ * --record for replay.
+ *
+ * --profile writes a copy of the listing (--listing, data/listing.txt by default) with each line's executions,
+ * cache misses and cycles in front. --callgraph writes the cycles per JSR call path as collapsed stacks for
+ * flame graph tools, naming subroutines from the symbol map (--symbols, the listing's .sym file by default), and
+ * prints each subroutine's inclusive and exclusive cycles. --coverage merges the addresses executed and branch
+ * directions taken into a coverage file (see Coverage).
+ *
+ * --golden-record saves state fingerprints every --golden-every instructions (see GoldenTrace); --golden-check
+ * compares a run against them, stops at the first difference and writes the last instructions to --golden-window
+ * (the recording's name plus .window by default). A divergence exits with status 3.
+ *
+ * Usage: java src.simulator.HeadlessRunner <load file> [--start octal] [--card file [--card-dma octal]]
+ *        [--out file] [--log file]
+ *        [--input script | --stdin] [--record file] [--stats]
+ *        [--ips n | --clock hz] [--profile file [--listing file]] [--callgraph file [--symbols file]]
+ *        [--coverage file] [--golden-record file | --golden-check file] [--golden-every n]
+ *        [--golden-window file]
+ */
+public class HeadlessRunner {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            usage();
+        }
+        String loadFile = args[0];
+        int start = -1;
+        String cardFile = null;
+        int cardDmaBase = -1;
+        String outFile = null;
+        String logFile = null;
+        String inputFile = null;
+        boolean stdin = false;
+        boolean stats = false;
+        Governor governor = null;
+        String recordFile = null;
+        String profileFile = null;
+        String listingFile = "data/listing.txt";
+        String callGraphFile = null;
+        String symbolFile = null;
+        String coverageFile = null;
+        String goldenRecordFile = null;
+        String goldenCheckFile = null;
+        String goldenWindowFile = null;
+        int goldenInterval = GoldenTrace.DEFAULT_INTERVAL;
+
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--stdin")) {
+                stdin = true;
+                continue;
+            }
+            if (args[i].equals("--stats")) {
+                stats = true;
+                continue;
+            }
+            if (i + 1 >= args.length) usage();
+            switch (args[i]) {
+                case "--start": start = Integer.parseInt(args[++i], 8); break;
+                case "--card": cardFile = args[++i]; break;
+                case "--card-dma": cardDmaBase = Integer.parseInt(args[++i], 8); break;
+                case "--out": outFile = args[++i]; break;
+                case "--log": logFile = args[++i]; break;
+                case "--input": inputFile = args[++i]; break;
+                case "--record": recordFile = args[++i]; break;
+                case "--ips": governor = Governor.instructionsPerSecond(Long.parseLong(args[++i])); break;
+                case "--clock": governor = Governor.clockHz(Long.parseLong(args[++i])); break;
+                case "--profile": profileFile = args[++i]; break;
+                case "--listing": listingFile = args[++i]; break;
+                case "--callgraph": callGraphFile = args[++i]; break;
+                case "--symbols": symbolFile = args[++i]; break;
+                case "--coverage": coverageFile = args[++i]; break;
+                case "--golden-record": goldenRecordFile = args[++i]; break;
+                case "--golden-check": goldenCheckFile = args[++i]; break;
+                case "--golden-every": goldenInterval = Integer.parseInt(args[++i]); break;
+                case "--golden-window": goldenWindowFile = args[++i]; break;
+                default: usage();
+            }
+        }
+
+        if (cardDmaBase >= 0 && cardFile == null) usage();
+
+        PrintStream stdout = System.out;
+        PrintStream log = (logFile != null)
+                ? new PrintStream(new BufferedOutputStream(new FileOutputStream(logFile)), false)
+                : new PrintStream(OutputStream.nullOutputStream());
+        Writer printerSink = (outFile != null)
+                ? new BufferedWriter(new FileWriter(outFile))
+                : new OutputStreamWriter(stdout);
+
+        InputRecorder recorder = (recordFile != null) ? new InputRecorder(recordFile) : null;
+
+        Trace.enabled = logFile != null; // nobody reads the trace otherwise, so don't build it
+        System.setOut(log);
+        int exitStatus = 0; // exit after the finally block, so the log and output are flushed
+        try {
+            Computer computer = new Computer();
+            computer.setPrinterOutput(printerSink);
+            if (cardFile != null) {
+                computer.setCardReaderFile(cardFile);
+            }
+            if (cardDmaBase >= 0) {
+                computer.mapCardReader(cardDmaBase);
+            }
+            if (inputFile != null) {
+                computer.setInputSource(ScriptInputSource.file(inputFile));
+            } else if (stdin) {
+                computer.setInputSource(StreamInputSource.stdin());
+            }
+            computer.getKeyboard().setRecorder(recorder);
+            computer.setGovernor(governor);
+            computer.IPL(loadFile, start);
+            if (profileFile != null) {
+                computer.setProfile(new Profile(computer.cache.getMemory().size()));
+            }
+            if (callGraphFile != null) {
+                computer.setCallGraph(CallGraph.fromSymbolFile(
+                        symbolFile != null ? symbolFile : AssemblyResult.symbolFile(listingFile)));
+            }
+            if (coverageFile != null) {
+                computer.setCoverage(new Coverage());
+            }
+            if (goldenRecordFile != null) {
+                computer.setGoldenTrace(GoldenTrace.record(goldenRecordFile, goldenInterval));
+            } else if (goldenCheckFile != null) {
+                computer.setGoldenTrace(GoldenTrace.check(goldenCheckFile));
+            }
+            long started = System.nanoTime();
+            computer.runUnattended();
+            long elapsed = System.nanoTime() - started;
+            computer.bus.close();
+            if (stats) {
+                printStats(computer, elapsed);
+            }
+            if (profileFile != null) {
+                computer.getProfile().writeAnnotated(listingFile, profileFile);
+                System.err.println("Profile: " + profileFile);
+            }
+            if (callGraphFile != null) {
+                computer.getCallGraph().writeCollapsedStacks(callGraphFile);
+                computer.getCallGraph().report().forEach(System.err::println);
+                System.err.println("Call graph: " + callGraphFile);
+            }
+            if (coverageFile != null) {
+                computer.getCoverage().mergeInto(coverageFile);
+                System.err.println("Coverage: " + coverageFile);
+            }
+            GoldenTrace golden = computer.getGoldenTrace();
+            if (golden != null) {
+                boolean matched = golden.finish();
+                System.err.println(golden.describe());
+                if (!matched) {
+                    String windowFile = goldenWindowFile != null ? goldenWindowFile : goldenCheckFile + ".window";
+                    FileIO.writeFile(windowFile, golden.window());
+                    System.err.println("Last instructions: " + windowFile);
+                    exitStatus = 3;
+                }
+            }
+
+            if (exitStatus == 0 && computer.isWaitingForInput()) {
+                System.err.println("Stopped: program is waiting for console input");
+                exitStatus = 2;
+            }
+        } finally {
+            System.setOut(stdout);
+            log.close();
+            if (recorder != null) recorder.close();
+            printerSink.flush();
+            if (outFile != null) printerSink.close();
+        }
+        if (exitStatus != 0) System.exit(exitStatus);
+    }
+
+    private static void printStats(Computer computer, long elapsedNanos) {
+        long instructions = computer.getInstructionCount();
+        long hits = computer.cache.getHits();
+        long accesses = hits + computer.cache.getMisses();
+        System.err.printf("Instructions: %,d (%,.0f/s)%n", instructions, instructions / Math.max(1e-9, elapsedNanos / 1e9));
+        System.err.printf("Cycles: %,d%n", computer.getCycleCount());
+        System.err.printf("Cache: %,d accesses, %.1f%% hits, %,d evictions%n", accesses,
+                accesses == 0 ? 0.0 : 100.0 * hits / accesses, computer.cache.getEvictions());
+        System.err.printf("I/O wait: %.3f s%n", computer.getIoWaitNanos() / 1e9);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java src.simulator.HeadlessRunner <load file> [--start octal] " +
+                "[--card file [--card-dma octal]] [--out file] [--log file] [--input script | --stdin] " +
+                "[--record file] [--stats] " +
+                "[--ips n | --clock hz] [--profile file [--listing file]] " +
+                "[--callgraph file [--symbols file]] [--coverage file] " +
+                "[--golden-record file | --golden-check file] [--golden-every n] [--golden-window file]");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,43 @@
+package src.simulator;
+
+import java.io.*;
+
+/**
+ * Records console input lines with their timing, in the ScriptInputSource "@ms text" format, so a live
+ * session can be replayed later.
+ */
+public class InputRecorder implements Closeable {
+    private final Writer out;
+    private final long startMillis = System.currentTimeMillis();
+    private final StringBuilder partialLine = new StringBuilder();
+
+    public InputRecorder(String fileName) throws IOException {
+        out = new BufferedWriter(new FileWriter(fileName));
+    }
+
+    /**
+     * Record text entering the keyboard. Complete lines are written out, a trailing partial line waits for
+     * its newline.
+     */
+    public synchronized void record(CharSequence text) {
+        try {
+            for (int i = 0; i < text.length(); i++) {
+                char ch = text.charAt(i);
+                if (ch == '\n') {
+                    out.write("@" + (System.currentTimeMillis() - startMillis) + " " + partialLine + "\n");
+                    partialLine.setLength(0);
+                } else {
+                    partialLine.append(ch);
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Input recorder error: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
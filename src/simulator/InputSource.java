@@ -0,0 +1,35 @@
+package src.simulator;
+
+/**
+ * Supplies console input lines to the keyboard (device 0) for unattended runs. The keyboard pulls a line
+ * whenever its type-ahead buffer runs dry, so input arrives as fast as the program asks for it.
+ */
+public interface InputSource {
+    // millisUntilReady() result when the next line waits on something other than time
+    long NOT_READY = -1;
+
+    /**
+     * @return the next line (without its newline), or null if none is ready yet
+     */
+    String poll();
+
+    /**
+     * @return true once every line has been delivered
+     */
+    boolean isExhausted();
+
+    /**
+     * @return 0 if the next line is ready (or readiness is unknown), milliseconds until it is due,
+     * or NOT_READY if it waits on program output
+     */
+    long millisUntilReady();
+
+    /**
+     * Sees each character the program prints, for sources that wait on prompts.
+     */
+    default void onOutput(char ch) {
+    }
+
+    default void close() {
+    }
+}
@@ -1,59 +1,154 @@
 package src.simulator;
 
+import java.util.Arrays;
+import java.util.BitSet;
+
 public class Memory {
-    private short[] memory;
-    private static final int MEMORY_SIZE = 2048;
+    public static final int DEFAULT_SIZE = 2048;
+    public static final int MAX_SIZE = 65536; // 16-bit addresses
+    // changes are tracked per page of 64 words, so viewers only repaint what changed
+    public static final int PAGE_SHIFT = 6;
+    public static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    private final short[] memory;
+    private final int size;
+    private final boolean[] dirtyPages;
+    private volatile boolean anyDirty;
 
     /**
-     * Initializes memory of size MEMORY_SIZE with 0's.
+     * Initializes memory of size DEFAULT_SIZE with 0's.
      */
     public Memory() {
-        memory = new short[MEMORY_SIZE];
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Initializes memory of the given size (up to MAX_SIZE words) with 0's.
+     */
+    public Memory(int size) {
+        if (size <= 0 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Memory size must be 1.." + MAX_SIZE + ": " + size);
+        }
+        this.size = size;
+        memory = new short[size];
+        dirtyPages = new boolean[(size + PAGE_SIZE - 1) >> PAGE_SHIFT];
         reset();
     }
 
     public void reset() {
-        for(int i = 0; i < MEMORY_SIZE; i++) {
-            memory[i] = 0;
-        }
+        Arrays.fill(memory, (short) 0);
+        markDirty(0, size);
     }
 
     public short read(int address) {
-        if(address >= 0 && address < MEMORY_SIZE) {
-            int unsigned = memory[address] & 0xFFFF;
-            String octal = String.format("%06o", unsigned);
-            String binary = String.format("%16s", Integer.toBinaryString(unsigned)).replace(' ', '0');
-
-            System.out.println("Memory READ: addr=" + address +
-                    " value=" + unsigned +
-                    " (octal: " + octal +
-                    ", binary: " + binary + ")");
+        if(address >= 0 && address < size) {
+            if (Trace.enabled) {
+                int unsigned = memory[address] & 0xFFFF;
+                String octal = String.format("%06o", unsigned);
+                String binary = String.format("%16s", Integer.toBinaryString(unsigned)).replace(' ', '0');
+
+                System.out.println("Memory READ: addr=" + address +
+                        " value=" + unsigned +
+                        " (octal: " + octal +
+                        ", binary: " + binary + ")");
+            }
             return memory[address];
         }
-        System.out.println("Memory READ ERROR: Invalid address " + address);
+        if (Trace.enabled) System.out.println("Memory READ ERROR: Invalid address " + address);
         return 0;
     }
 
     public void write(int address, short value) {
-        if(address >= 0 && address < MEMORY_SIZE) {
-            int unsigned = value & 0xFFFF;
-            String octal = String.format("%06o", unsigned);
-            String binary = String.format("%16s", Integer.toBinaryString(unsigned)).replace(' ', '0');
-
-            System.out.println("Memory WRITE: addr=" + address +
-                    " value=" + unsigned +
-                    " (octal: " + octal +
-                    ", binary: " + binary + ")");
+        if(address >= 0 && address < size) {
+            if (Trace.enabled) {
+                int unsigned = value & 0xFFFF;
+                String octal = String.format("%06o", unsigned);
+                String binary = String.format("%16s", Integer.toBinaryString(unsigned)).replace(' ', '0');
+
+                System.out.println("Memory WRITE: addr=" + address +
+                        " value=" + unsigned +
+                        " (octal: " + octal +
+                        ", binary: " + binary + ")");
+            }
             memory[address] = value;
+            markDirty(address);
         } else {
-            System.out.println("Memory WRITE ERROR: Invalid address " + address);
+            if (Trace.enabled) System.out.println("Memory WRITE ERROR: Invalid address " + address);
         }
     }
 
     public void load(int address, short value) {
         // Direct load for ROM loader
-        if(address >= 0 && address < MEMORY_SIZE) {
+        if(address >= 0 && address < size) {
             memory[address] = value;
+            markDirty(address);
+        }
+    }
+
+    /**
+     * Bulk load for the ROM loader: copies a block of words starting at address.
+     * @param address first memory address
+     * @param words source words
+     * @param offset first word in source
+     * @param length number of words
+     */
+    public void loadBlock(int address, short[] words, int offset, int length) {
+        if(address < 0 || address + length > size) {
+            throw new IllegalArgumentException("Block load out of range: addr=" + address + " length=" + length);
+        }
+        System.arraycopy(words, offset, memory, address, length);
+        markDirty(address, length);
+    }
+
+    /**
+     * Bulk read for DMA: copies a block of words starting at address.
+     */
+    public void readBlock(int address, short[] words, int offset, int length) {
+        if(address < 0 || address + length > size) {
+            throw new IllegalArgumentException("Block read out of range: addr=" + address + " length=" + length);
+        }
+        System.arraycopy(memory, address, words, offset, length);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Read a word without tracing, for viewers.
+     */
+    public short peek(int address) {
+        return memory[address];
+    }
+
+    /**
+     * Take the set of pages (PAGE_SIZE words each) written since the last call.
+     * @return the changed page numbers, empty if nothing changed
+     */
+    public BitSet takeDirtyPages() {
+        BitSet changed = new BitSet(dirtyPages.length);
+        if (!anyDirty) return changed;
+        anyDirty = false;
+        for (int page = 0; page < dirtyPages.length; page++) {
+            if (dirtyPages[page]) {
+                dirtyPages[page] = false;
+                changed.set(page);
+            }
+        }
+        return changed;
+    }
+
+    private void markDirty(int address) {
+        dirtyPages[address >> PAGE_SHIFT] = true;
+        if (!anyDirty) anyDirty = true;
+    }
+
+    private void markDirty(int address, int length) {
+        if (length <= 0) return;
+        int last = (address + length - 1) >> PAGE_SHIFT;
+        for (int page = address >> PAGE_SHIFT; page <= last; page++) {
+            dirtyPages[page] = true;
         }
+        anyDirty = true;
     }
 }
\ No newline at end of file
@@ -0,0 +1,121 @@
+package src.simulator;
+
+import src.assembler.Disassembler;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.util.BitSet;
+
+/**
+ * Scrollable view of all of memory: address, octal, decimal and the disassembly of each word.
+ * JTable only renders the visible rows, and refresh() only fires updates for the pages Memory reports as
+ * changed, so the view stays cheap at large memory sizes and while a program runs.
+ */
+public class MemoryPanel extends JPanel {
+    private static final String[] COLUMNS = {"Addr", "Octal", "Decimal", "Instruction"};
+
+    private final MemoryTableModel model = new MemoryTableModel();
+    private final JTable table = new JTable(model);
+    private final JTextField gotoField = new JTextField(6);
+
+    public MemoryPanel() {
+        super(new BorderLayout(0, 5));
+        setOpaque(false);
+
+        table.setFont(new Font("Monospaced", Font.PLAIN, 11));
+        table.setRowHeight(16); // fixed row height keeps scrolling O(visible rows)
+        table.setFillsViewportHeight(true);
+        table.getTableHeader().setReorderingAllowed(false);
+        table.getColumnModel().getColumn(0).setPreferredWidth(55);
+        table.getColumnModel().getColumn(1).setPreferredWidth(60);
+        table.getColumnModel().getColumn(2).setPreferredWidth(60);
+        table.getColumnModel().getColumn(3).setPreferredWidth(130);
+
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        top.setOpaque(false);
+        JLabel label = new JLabel("Memory");
+        label.setFont(new Font("Arial", Font.BOLD, 12));
+        top.add(label);
+        top.add(new JLabel("Go to (octal)"));
+        top.add(gotoField);
+        gotoField.addActionListener(_ -> gotoAddress());
+
+        add(top, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+    }
+
+    /**
+     * Show a (new) memory, e.g. after IPL created a new machine.
+     */
+    public void setMemory(Memory memory) {
+        model.memory = memory;
+        memory.takeDirtyPages();
+        model.fireTableDataChanged();
+    }
+
+    /**
+     * Repaint the words written since the last refresh. Call on the EDT.
+     */
+    public void refresh() {
+        Memory memory = model.memory;
+        if (memory == null) return;
+        BitSet pages = memory.takeDirtyPages();
+        int rows = memory.size();
+        // one update per run of consecutive changed pages
+        for (int first = pages.nextSetBit(0); first >= 0; ) {
+            int end = pages.nextClearBit(first);
+            int firstRow = first << Memory.PAGE_SHIFT;
+            int lastRow = Math.min(rows, end << Memory.PAGE_SHIFT) - 1;
+            model.fireTableRowsUpdated(firstRow, lastRow);
+            first = pages.nextSetBit(end);
+        }
+    }
+
+    /**
+     * Scroll to an address and select it.
+     */
+    public void showAddress(int address) {
+        if (model.memory == null || address < 0 || address >= model.memory.size()) return;
+        table.setRowSelectionInterval(address, address);
+        table.scrollRectToVisible(table.getCellRect(address, 0, true));
+    }
+
+    private void gotoAddress() {
+        try {
+            showAddress(Integer.parseInt(gotoField.getText().trim(), 8));
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(this, "Invalid octal number!", "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private static class MemoryTableModel extends AbstractTableModel {
+        Memory memory;
+
+        @Override
+        public int getRowCount() {
+            return memory == null ? 0 : memory.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            int word = memory.peek(row) & 0xFFFF;
+            switch (column) {
+                case 0: return String.format("%06o", row);
+                case 1: return String.format("%06o", word);
+                case 2: return Integer.toString(word);
+                default: return Disassembler.text(word);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package src.simulator;
+
+import src.assembler.Encoder;
+
+public class MemoryTest {
+
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) {
+        System.out.println("===  Memory and Cache Testing ===\n");
+        Trace.enabled = false;
+
+        testCache();
+        testUpperHalf();
+
+        System.out.println("\n=== Test Results ===");
+        System.out.println("Tests Passed: " + testsPassed);
+        System.out.println("Tests Failed: " + testsFailed);
+        System.out.println("Total Tests: " + (testsPassed + testsFailed));
+
+        if (testsFailed == 0) {
+            System.out.println("*** ALL TESTS PASSED! ***");
+        } else {
+            System.out.println("*** " + testsFailed + " tests failed. ***");
+        }
+    }
+
+    private static void testCache() {
+        System.out.println("--- Testing Cache ---");
+
+        Cache cache = new Cache(new Memory(Memory.MAX_SIZE));
+        for (int address : new int[] {100, 32767, 32768, 40000, 65535}) {
+            cache.write(address, 1234);
+            assertTrue(cache.getMemory().peek(address) == 1234, "write at " + address + " reaches memory");
+            assertTrue(cache.read(address) == 1234, "read at " + address + " hits the cache");
+            for (int a = 0; a < cache.getCacheSize(); a++) {
+                cache.read(200 + a);
+            }
+            assertTrue(cache.getCacheMap().size() == cache.getCacheSize()
+                    && !cache.getCacheMap().containsKey((short) address), "line for " + address + " evicted");
+            assertTrue(cache.read(address) == 1234, "read at " + address + " after eviction");
+        }
+        cache.write(-1, 77);
+        assertTrue(cache.getMemory().peek(65535) == 77, "address wraps to 16 bits");
+    }
+
+    private static void testUpperHalf() {
+        System.out.println("\n--- Testing Addresses Above 32767 ---");
+
+        Computer computer = new Computer(Memory.MAX_SIZE);
+        // page zero pointer into the upper half, and a program that runs there
+        computer.patchMemory(20, (short) 50000);
+        computer.patchMemory(21, (short) 1);
+        computer.patchMemory(50000, (short) 42);
+        computer.patchMemory(50001, (short) 43);
+        String[] program = {"LDR 0,0,20,1", "LDX 1,20", "LDR 1,1,1", "STR 0,1,2", "HLT"};
+        for (int i = 0; i < program.length; i++) {
+            computer.patchMemory(40000 + i, (short) Encoder.encodeWord(program[i]));
+        }
+        computer.cpu.PC = (short) 40000;
+        for (int n = 0; n < 10 && !computer.isHalted(); n++) {
+            computer.singleStep();
+        }
+        assertTrue(computer.cpu.MFR == 0 && (computer.cpu.PC & 0xFFFF) == 40005, "program fetched above 32767");
+        assertTrue(computer.cpu.R[0] == 42, "indirect load through a pointer above 32767");
+        assertTrue(computer.cpu.R[1] == 43, "indexed load above 32767");
+        assertTrue(computer.cache.getMemory().peek(50002) == 42, "indexed store above 32767");
+
+        Computer small = new Computer();
+        small.cpu.PC = (short) 40000;
+        small.singleStep();
+        assertTrue(small.cpu.MFR != 0, "fetch beyond a 2048-word memory faults");
+    }
+
+    private static void assertTrue(boolean passed, String description) {
+        if (passed) {
+            System.out.println("PASS: " + description);
+            testsPassed++;
+        } else {
+            System.out.println("FAIL: " + description);
+            testsFailed++;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package src.simulator;
+
+import src.assembler.Encoder;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Live performance figures for the running machine. Computer and Cache only bump counters; this panel samples
+ * them on its own timer and shows the rates over the last sample interval, plus a hit rate history chart.
+ */
+public class PerformancePanel extends JPanel {
+    private static final int SAMPLE_MS = 500;
+    private static final int HISTORY = 120; // samples in the hit rate chart, one minute
+    private static final int TOP_OPCODES = 5;
+
+    private Computer computer;
+
+    // counters at the previous sample
+    private long lastNanos;
+    private long lastInstructions;
+    private long lastHits;
+    private long lastMisses;
+    private long lastEvictions;
+
+    private final JLabel ipsLabel = new JLabel();
+    private final JLabel instructionsLabel = new JLabel();
+    private final JLabel cyclesLabel = new JLabel();
+    private final JLabel hitRateLabel = new JLabel();
+    private final JLabel evictionLabel = new JLabel();
+    private final JLabel ioWaitLabel = new JLabel();
+    private final JLabel topOpcodesLabel = new JLabel();
+    private final HitRateChart chart = new HitRateChart();
+
+    public PerformancePanel() {
+        super(new BorderLayout(0, 5));
+        setOpaque(false);
+
+        JLabel title = new JLabel("Performance");
+        title.setFont(new Font("Arial", Font.BOLD, 12));
+        add(title, BorderLayout.NORTH);
+
+        JPanel figures = new JPanel(new GridLayout(0, 2, 5, 2));
+        figures.setOpaque(false);
+        addFigure(figures, "Instructions/s", ipsLabel);
+        addFigure(figures, "Instructions", instructionsLabel);
+        addFigure(figures, "Cycles", cyclesLabel);
+        addFigure(figures, "Cache hit rate", hitRateLabel);
+        addFigure(figures, "Evictions/s", evictionLabel);
+        addFigure(figures, "I/O wait", ioWaitLabel);
+        addFigure(figures, "Top opcodes", topOpcodesLabel);
+        add(figures, BorderLayout.CENTER);
+
+        chart.setPreferredSize(new Dimension(0, 60));
+        add(chart, BorderLayout.SOUTH);
+
+        new Timer(SAMPLE_MS, _ -> sample()).start();
+    }
+
+    /**
+     * Show a (new) machine, e.g. after IPL.
+     */
+    public void setComputer(Computer computer) {
+        this.computer = computer;
+        lastNanos = System.nanoTime();
+        lastInstructions = computer.getInstructionCount();
+        lastHits = computer.cache.getHits();
+        lastMisses = computer.cache.getMisses();
+        lastEvictions = computer.cache.getEvictions();
+        chart.clear();
+        sample();
+    }
+
+    private static void addFigure(JPanel panel, String name, JLabel value) {
+        panel.add(new JLabel(name));
+        value.setFont(new Font("Monospaced", Font.PLAIN, 11));
+        panel.add(value);
+    }
+
+    private void sample() {
+        if (computer == null) return;
+        long now = System.nanoTime();
+        long instructions = computer.getInstructionCount();
+        long hits = computer.cache.getHits();
+        long misses = computer.cache.getMisses();
+        long evictions = computer.cache.getEvictions();
+
+        double seconds = Math.max(1e-9, (now - lastNanos) / 1e9);
+        long accesses = (hits - lastHits) + (misses - lastMisses);
+        double hitRate = accesses == 0 ? -1 : 100.0 * (hits - lastHits) / accesses;
+
+        ipsLabel.setText(String.format("%,.0f", (instructions - lastInstructions) / seconds));
+        instructionsLabel.setText(String.format("%,d", instructions));
+        cyclesLabel.setText(String.format("%,d", computer.getCycleCount()));
+        hitRateLabel.setText(hitRate < 0 ? "-" : String.format("%.1f%%", hitRate));
+        evictionLabel.setText(String.format("%,.0f", (evictions - lastEvictions) / seconds));
+        ioWaitLabel.setText(String.format("%.1f s", computer.getIoWaitNanos() / 1e9));
+        topOpcodesLabel.setText(topOpcodes(computer.getOpcodeCounts(), instructions));
+        if (hitRate >= 0) chart.add(hitRate);
+
+        lastNanos = now;
+        lastInstructions = instructions;
+        lastHits = hits;
+        lastMisses = misses;
+        lastEvictions = evictions;
+    }
+
+    private static String topOpcodes(long[] counts, long total) {
+        if (total == 0) return "-";
+        StringBuilder text = new StringBuilder();
+        boolean[] taken = new boolean[counts.length];
+        for (int n = 0; n < TOP_OPCODES; n++) {
+            int best = -1;
+            for (int op = 0; op < counts.length; op++) {
+                if (!taken[op] && counts[op] > 0 && (best < 0 || counts[op] > counts[best])) best = op;
+            }
+            if (best < 0) break;
+            taken[best] = true;
+            if (text.length() > 0) text.append(' ');
+            text.append(Encoder.getOpcodeName(best)).append(' ').append(100 * counts[best] / total).append('%');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Cache hit rate per sample interval, oldest on the left.
+     */
+    private static class HitRateChart extends JComponent {
+        private final double[] samples = new double[HISTORY];
+        private int count;
+        private int next;
+
+        void add(double hitRate) {
+            samples[next] = hitRate;
+            next = (next + 1) % HISTORY;
+            count = Math.min(count + 1, HISTORY);
+            repaint();
+        }
+
+        void clear() {
+            count = 0;
+            next = 0;
+            repaint();
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            int w = getWidth();
+            int h = getHeight();
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, w, h);
+            g.setColor(Color.LIGHT_GRAY);
+            g.drawRect(0, 0, w - 1, h - 1);
+            if (count < 2) return;
+
+            g.setColor(new Color(0, 100, 180));
+            int first = (next - count + HISTORY) % HISTORY;
+            int prevX = 0, prevY = 0;
+            for (int i = 0; i < count; i++) {
+                double rate = samples[(first + i) % HISTORY];
+                int x = (w - 1) * i / (HISTORY - 1);
+                int y = (int) ((h - 1) * (1 - rate / 100));
+                if (i > 0) g.drawLine(prevX, prevY, x, y);
+                prevX = x;
+                prevY = y;
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package src.simulator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-address execution profile: how often the instruction at each address ran, the simulated cycles it took and
+ * the cache misses of its fetch and data accesses. Counted in plain arrays while the program runs (see
+ * Computer.setProfile), and joined to a listing file by address afterwards.
+ */
+public class Profile {
+    private static final int HOTTEST_LINES = 10;
+
+    private final long[] executions;
+    private final long[] cycles;
+    private final long[] misses;
+
+    /**
+     * @param size words of memory to profile
+     */
+    public Profile(int size) {
+        executions = new long[size];
+        cycles = new long[size];
+        misses = new long[size];
+    }
+
+    void record(int address, int cycleCost, long missCount) {
+        executions[address]++;
+        cycles[address] += cycleCost;
+        misses[address] += missCount;
+    }
+
+    public long getExecutions(int address) {
+        return executions[address];
+    }
+
+    public long getCycles(int address) {
+        return cycles[address];
+    }
+
+    public long getMisses(int address) {
+        return misses[address];
+    }
+
+    /**
+     * Annotate a listing: each line that starts with an address gets that address's executions, misses and
+     * cycles in front; the hottest lines by cycles are summarized at the end.
+     */
+    public List<String> annotate(List<String> listing) {
+        List<String> annotated = new ArrayList<>(listing.size() + HOTTEST_LINES + 4);
+        annotated.add(String.format("; %10s %8s %10s  %s", "execs", "misses", "cycles", "listing"));
+        long totalCycles = 0;
+        for (long c : cycles) totalCycles += c;
+
+        List<String> hot = new ArrayList<>();
+        List<Long> hotCycles = new ArrayList<>();
+        for (String line : listing) {
+            int address = addressOf(line);
+            if (address < 0 || address >= executions.length || executions[address] == 0) {
+                annotated.add(String.format("  %10s %8s %10s  %s", "", "", "", line));
+                continue;
+            }
+            String annotatedLine = String.format("  %10d %8d %10d  %s", executions[address], misses[address],
+                    cycles[address], line);
+            annotated.add(annotatedLine);
+
+            // keep the HOTTEST_LINES lines with the most cycles, in order
+            int at = hot.size();
+            while (at > 0 && hotCycles.get(at - 1) < cycles[address]) at--;
+            if (at < HOTTEST_LINES) {
+                hot.add(at, annotatedLine);
+                hotCycles.add(at, cycles[address]);
+                if (hot.size() > HOTTEST_LINES) {
+                    hot.remove(HOTTEST_LINES);
+                    hotCycles.remove(HOTTEST_LINES);
+                }
+            }
+        }
+
+        annotated.add("");
+        annotated.add(String.format("; hottest lines, of %,d cycles:", totalCycles));
+        annotated.addAll(hot);
+        return annotated;
+    }
+
+    /**
+     * Write an annotated copy of a listing file.
+     */
+    public void writeAnnotated(String listingFile, String outFile) throws IOException {
+        FileIO.writeFile(outFile, annotate(FileIO.readSourceFile(listingFile)));
+    }
+
+    /**
+     * @return the address a listing line starts with, or -1 for LOC lines, comments and blank lines
+     */
+    static int addressOf(String line) {
+        if (line.length() < 13 || line.charAt(6) != ' ') return -1;
+        int address = 0;
+        for (int i = 0; i < 6; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '7') return -1;
+            address = (address << 3) | (c - '0');
+        }
+        return address;
+    }
+}
@@ -0,0 +1,190 @@
+package src.simulator;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary program image, the fast alternative to the text load file.
+ *
+ * Layout (big-endian):
+ *  - header: magic "C646", version, segment count, entry point (-1 if none), CRC32 of the segment section
+ *  - segments: start address, word count, then the words themselves
+ *
+ * Each segment is a run of contiguous words, so loading is one bulk copy per segment instead of
+ * one parse per word.
+ */
+public class ProgramImage {
+    public static final int MAGIC = 0x43363436; // "C646"
+    public static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    private final List<Segment> segments;
+    private final int entryPoint;
+
+    /**
+     * A run of contiguous words starting at a memory address.
+     */
+    public static class Segment {
+        public final int start;
+        public final short[] words;
+
+        Segment(int start, short[] words) {
+            this.start = start;
+            this.words = words;
+        }
+    }
+
+    private ProgramImage(List<Segment> segments, int entryPoint) {
+        this.segments = segments;
+        this.entryPoint = entryPoint;
+    }
+
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    public int getEntryPoint() {
+        return entryPoint;
+    }
+
+    /**
+     * Builds an image from (address, word) pairs in load order. A later word for the same address
+     * replaces an earlier one, the same as loading the text file line by line would.
+     * @param addresses word addresses
+     * @param words word values
+     * @param count number of valid pairs
+     * @param entryPoint start address, or -1 if the program doesn't define one
+     */
+    public static ProgramImage build(int[] addresses, short[] words, int count, int entryPoint) {
+        int top = -1;
+        for (int i = 0; i < count; i++) {
+            top = Math.max(top, addresses[i]);
+        }
+
+        short[] flat = new short[top + 1];
+        BitSet defined = new BitSet(top + 1);
+        for (int i = 0; i < count; i++) {
+            flat[addresses[i]] = words[i];
+            defined.set(addresses[i]);
+        }
+
+        // coalesce defined addresses into contiguous segments
+        List<Segment> segments = new ArrayList<>();
+        int start = defined.nextSetBit(0);
+        while (start >= 0) {
+            int end = defined.nextClearBit(start);
+            short[] run = new short[end - start];
+            System.arraycopy(flat, start, run, 0, run.length);
+            segments.add(new Segment(start, run));
+            start = defined.nextSetBit(end);
+        }
+        return new ProgramImage(segments, entryPoint);
+    }
+
+    /**
+     * Writes the image to a file.
+     * @param fileName output image file name
+     * @throws IOException if the file cannot be written
+     */
+    public void write(String fileName) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream bodyOut = new DataOutputStream(body);
+        for (Segment segment : segments) {
+            bodyOut.writeInt(segment.start);
+            bodyOut.writeInt(segment.words.length);
+            for (short word : segment.words) {
+                bodyOut.writeShort(word);
+            }
+        }
+        byte[] bodyBytes = body.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes);
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(segments.size());
+            out.writeInt(entryPoint);
+            out.writeInt((int) crc.getValue());
+            out.write(bodyBytes);
+        }
+    }
+
+    /**
+     * Checks whether a file starts with the image magic number.
+     * @param fileName file to check
+     * @return true if the file is a binary program image
+     */
+    public static boolean isImage(String fileName) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads and verifies an image file.
+     * @param fileName image file name
+     * @return the image
+     * @throws IOException if the file cannot be read, or is corrupt
+     */
+    public static ProgramImage read(String fileName) throws IOException {
+        Path path = Paths.get(fileName);
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a program image: " + fileName);
+        }
+        int version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported program image version " + version + ": " + fileName);
+        }
+        int segmentCount = buffer.getShort() & 0xFFFF;
+        int entryPoint = buffer.getInt();
+        int checksum = buffer.getInt();
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Program image checksum mismatch: " + fileName);
+        }
+
+        List<Segment> segments = new ArrayList<>(segmentCount);
+        try {
+            for (int i = 0; i < segmentCount; i++) {
+                int start = buffer.getInt();
+                int length = buffer.getInt();
+                short[] words = new short[length];
+                buffer.asShortBuffer().get(words);
+                buffer.position(buffer.position() + length * 2);
+                segments.add(new Segment(start, words));
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Truncated program image: " + fileName);
+        }
+        return new ProgramImage(segments, entryPoint);
+    }
+
+    /**
+     * Copies every segment into memory.
+     * @param memory target memory
+     * @return number of words loaded
+     */
+    public int loadInto(Memory memory) {
+        int loaded = 0;
+        for (Segment segment : segments) {
+            memory.loadBlock(segment.start, segment.words, 0, segment.words.length);
+            loaded += segment.words.length;
+        }
+        return loaded;
+    }
+}
@@ -1,37 +1,68 @@
 package src.simulator;
 import java.io.*;
-import java.util.Scanner;
 
 public class ROMLoader {
 
-    public static void loadProgram(Cache cache, String filename) {
-
+    /**
+     * Loads a program into memory. Binary program images (see ProgramImage) are loaded with bulk copies,
+     * anything else is read as a text load file of "address value" octal pairs.
+     * @param cache cache in front of the memory to load
+     * @param filename load file or program image
+     * @return the image entry point, or -1 if the file doesn't define one
+     */
+    public static int loadProgram(Cache cache, String filename) {
+        Memory memory = cache.getMemory();
+        System.out.println("Loading ROM from file: " + filename);
         try {
-            Memory memory = cache.getMemory();
-            Scanner scanner = new Scanner(new File(filename));
-            System.out.println("Loading ROM from file: " + filename);
-            while(scanner.hasNextLine()) {
-                String line = scanner.nextLine().trim();
-                if(line.isEmpty() || line.startsWith("#") || line.startsWith(";")) continue;
+            if (ProgramImage.isImage(filename)) {
+                ProgramImage image = ProgramImage.read(filename);
+                int loaded = image.loadInto(memory);
+                System.out.println("Loaded " + loaded + " words in " + image.getSegments().size() +
+                        " segments from program image");
+                return image.getEntryPoint();
+            }
+            int loaded = loadText(memory, filename);
+            System.out.println("Loaded " + loaded + " words from load file");
+        } catch(Exception e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+        return -1;
+    }
 
-                String[] parts = line.split("\\s+");
-                if(parts.length >= 2) {
-                    int address = Integer.parseInt(parts[0], 8);
-                    short instruction = (short)Integer.parseInt(parts[1], 8);
+    /**
+     * Reads a text load file. Each line is parsed once, straight from the characters.
+     */
+    private static int loadText(Memory memory, String filename) throws IOException {
+        int loaded = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int pos = skipSpaces(line, 0);
+                if (pos == line.length() || line.charAt(pos) == '#' || line.charAt(pos) == ';') continue;
 
-                    memory.load(address, instruction);
+                int addressEnd = skipOctal(line, pos);
+                int valueStart = skipSpaces(line, addressEnd);
+                int valueEnd = skipOctal(line, valueStart);
+                if (addressEnd == pos || valueEnd == valueStart) {
+                    throw new IOException("Malformed load file line: " + line);
                 }
 
-                int address = Integer.parseInt(parts[0], 8);
-                int value = Integer.parseInt(parts[1], 8);
-                System.out.println("Loading: addr=" + address + " (octal: " + parts[0] +
-                        "), value=" + value + " (octal: " + parts[1] + ")");
+                int address = Integer.parseInt(line, pos, addressEnd, 8);
+                short value = (short) Integer.parseInt(line, valueStart, valueEnd, 8);
+                memory.load(address, value);
+                loaded++;
             }
-            scanner.close();
+        }
+        return loaded;
+    }
 
+    private static int skipSpaces(String line, int pos) {
+        while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) pos++;
+        return pos;
+    }
 
-        } catch(Exception e) {
-            System.err.println("Error: " + e.getMessage());
-        }
+    private static int skipOctal(String line, int pos) {
+        while (pos < line.length() && line.charAt(pos) >= '0' && line.charAt(pos) <= '7') pos++;
+        return pos;
     }
-}
\ No newline at end of file
+}
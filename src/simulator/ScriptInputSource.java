@@ -0,0 +1,106 @@
+package src.simulator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scripted console input. Each script line is one line of input:
+ *  - "text"          delivered as soon as the program asks for input
+ *  - "@500 text"     delivered no earlier than 500ms after the script starts
+ *  - "?prompt|text"  delivered once the program has printed "prompt"
+ *  - "# ..."         comment; blank lines are skipped. Start a line with '\' to deliver it literally.
+ *
+ * InputRecorder writes sessions in the "@ms text" form, so recordings replay with their original timing.
+ */
+public class ScriptInputSource implements InputSource {
+    private static final int MAX_RECENT_OUTPUT = 4096;
+
+    private static class Entry {
+        final long dueMillis;  // 0 if not timed
+        final String prompt;   // null if not triggered
+        final String text;
+
+        Entry(long dueMillis, String prompt, String text) {
+            this.dueMillis = dueMillis;
+            this.prompt = prompt;
+            this.text = text;
+        }
+    }
+
+    private final List<Entry> entries;
+    private int next;
+    private long startMillis = -1;
+    private final StringBuilder recentOutput = new StringBuilder();
+
+    public ScriptInputSource(List<String> scriptLines) {
+        entries = new ArrayList<>();
+        for (String line : scriptLines) {
+            Entry entry = parse(line);
+            if (entry != null) entries.add(entry);
+        }
+    }
+
+    public static ScriptInputSource file(String fileName) throws IOException {
+        return new ScriptInputSource(FileIO.readSourceFile(fileName));
+    }
+
+    private static Entry parse(String line) {
+        if (line.isEmpty() || line.startsWith("#")) return null;
+        if (line.startsWith("\\")) return new Entry(0, null, line.substring(1));
+
+        if (line.startsWith("@")) {
+            int space = line.indexOf(' ');
+            String delay = space < 0 ? line.substring(1) : line.substring(1, space);
+            String text = space < 0 ? "" : line.substring(space + 1);
+            try {
+                return new Entry(Long.parseLong(delay), null, text);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad delay in script line: " + line);
+            }
+        }
+        if (line.startsWith("?")) {
+            int bar = line.indexOf('|');
+            if (bar < 0) throw new IllegalArgumentException("Triggered script line needs ?prompt|text: " + line);
+            return new Entry(0, line.substring(1, bar), line.substring(bar + 1));
+        }
+        return new Entry(0, null, line);
+    }
+
+    @Override
+    public synchronized String poll() {
+        if (next >= entries.size() || millisUntilReady() != 0) return null;
+
+        Entry entry = entries.get(next++);
+        if (entry.prompt != null) {
+            // consume output up to the prompt, so the next trigger needs a fresh prompt
+            int at = recentOutput.indexOf(entry.prompt);
+            recentOutput.delete(0, at + entry.prompt.length());
+        }
+        return entry.text;
+    }
+
+    @Override
+    public synchronized boolean isExhausted() {
+        return next >= entries.size();
+    }
+
+    @Override
+    public synchronized long millisUntilReady() {
+        if (startMillis < 0) startMillis = System.currentTimeMillis();
+        if (next >= entries.size()) return 0;
+
+        Entry entry = entries.get(next);
+        if (entry.prompt != null && recentOutput.indexOf(entry.prompt) < 0) return NOT_READY;
+        long elapsed = System.currentTimeMillis() - startMillis;
+        return Math.max(0, entry.dueMillis - elapsed);
+    }
+
+    @Override
+    public synchronized void onOutput(char ch) {
+        recentOutput.append(ch);
+        if (recentOutput.length() > MAX_RECENT_OUTPUT) {
+            recentOutput.delete(0, recentOutput.length() - MAX_RECENT_OUTPUT / 2);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package src.simulator;
+
+import java.io.*;
+
+/**
+ * Input lines read from a stream, e.g. stdin or a plain text file with one line per IN prompt.
+ */
+public class StreamInputSource implements InputSource {
+    private final BufferedReader reader;
+    private boolean exhausted;
+
+    public StreamInputSource(Reader reader) {
+        this.reader = new BufferedReader(reader);
+    }
+
+    public static StreamInputSource stdin() {
+        return new StreamInputSource(new InputStreamReader(System.in));
+    }
+
+    public static StreamInputSource file(String fileName) throws IOException {
+        return new StreamInputSource(new FileReader(fileName));
+    }
+
+    @Override
+    public String poll() {
+        if (exhausted) return null;
+        try {
+            String line = reader.readLine();
+            if (line == null) exhausted = true;
+            return line;
+        } catch (IOException e) {
+            System.err.println("Input error: " + e.getMessage());
+            exhausted = true;
+            return null;
+        }
+    }
+
+    @Override
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    @Override
+    public long millisUntilReady() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            System.err.println("Error closing input: " + e.getMessage());
+        }
+    }
+}
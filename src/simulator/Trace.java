@@ -0,0 +1,12 @@
+package src.simulator;
+
+/**
+ * Switch for the simulator's step-by-step trace on stdout. Trace statements are guarded with
+ * if (Trace.enabled), so with tracing off a run doesn't build any of the trace strings.
+ */
+public final class Trace {
+    public static volatile boolean enabled = true;
+
+    private Trace() {
+    }
+}